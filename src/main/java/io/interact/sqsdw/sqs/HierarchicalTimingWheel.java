@@ -0,0 +1,158 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel that holds a large number of items until their
+ * deadline with constant time insertion. Every level has 64 slots, each slot
+ * of a level covers a full rotation of the level below it. Items are cascaded
+ * to a lower level as time advances and returned by
+ * {@link #advance(long)} once their tick has passed.
+ * <p>
+ * This class is not thread safe, callers must synchronize access.
+ *
+ * @param <T>
+ *            Type of the scheduled items.
+ * @see MessageScheduler
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * Six levels of 64 slots cover 2^36 ticks, i.e. more than 2000 years with
+     * one second ticks. Items beyond that are parked in the top level.
+     */
+    private static final int LEVELS = 6;
+    private static final long MAX_DELTA = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private final List<List<Entry<T>>> slots = new ArrayList<>(LEVELS * WHEEL_SIZE);
+    private final long tickMillis;
+
+    /**
+     * The next tick to be processed.
+     */
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis
+     *            Resolution of the wheel in milliseconds.
+     * @param startMillis
+     *            Current time in milliseconds.
+     */
+    public HierarchicalTimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive!");
+        }
+
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+            slots.add(new ArrayList<Entry<T>>());
+        }
+    }
+
+    /**
+     * Adds an item to the wheel. Items with a deadline in the past are
+     * returned by the next call to {@link #advance(long)}.
+     *
+     * @param deadlineMillis
+     *            Time in milliseconds when the item is due.
+     * @param item
+     *            The item.
+     */
+    public void add(long deadlineMillis, T item) {
+        // Round up, so that items are never returned before their deadline.
+        place(new Entry<T>((deadlineMillis + tickMillis - 1) / tickMillis, item));
+        size++;
+    }
+
+    /**
+     * Advances the wheel up to and including the tick of the supplied time.
+     *
+     * @param nowMillis
+     *            Current time in milliseconds.
+     * @return All items whose deadline has passed, possibly empty.
+     */
+    public List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long nowTick = nowMillis / tickMillis;
+        while (currentTick <= nowTick) {
+            if (size == 0) {
+                currentTick = nowTick + 1;
+                break;
+            }
+
+            int index = (int) (currentTick & WHEEL_MASK);
+            if (index == 0) {
+                cascade();
+            }
+
+            List<Entry<T>> slot = slots.get(index);
+            for (Entry<T> entry : slot) {
+                expired.add(entry.item);
+            }
+            size -= slot.size();
+            slot.clear();
+            currentTick++;
+        }
+        return expired;
+    }
+
+    /**
+     * @return The number of items in the wheel.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the items of the current slot of every level whose lower levels
+     * completed a rotation down to the lower levels.
+     */
+    private void cascade() {
+        int index = 0;
+        for (int level = 1; level < LEVELS && index == 0; level++) {
+            index = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            List<Entry<T>> slot = slots.get(level * WHEEL_SIZE + index);
+            if (!slot.isEmpty()) {
+                List<Entry<T>> entries = new ArrayList<>(slot);
+                slot.clear();
+                for (Entry<T> entry : entries) {
+                    place(entry);
+                }
+            }
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        long delta = entry.tick - currentTick;
+        if (delta < 0) {
+            slots.get((int) (currentTick & WHEEL_MASK)).add(entry);
+            return;
+        }
+
+        long tick = delta > MAX_DELTA ? currentTick + MAX_DELTA : entry.tick;
+        int level = 0;
+        while (level < LEVELS - 1 && tick - currentTick >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        slots.get(level * WHEEL_SIZE + index).add(entry);
+    }
+
+    private static class Entry<T> {
+
+        private final long tick;
+        private final T item;
+
+        Entry(long tick, T item) {
+            this.tick = tick;
+            this.item = item;
+        }
+    }
+}
@@ -15,6 +15,12 @@ import com.amazonaws.services.sqs.model.SendMessageRequest;
  */
 public class MessageDispatcher {
 
+    /**
+     * Maximum delay that SQS supports, use the {@link MessageScheduler} for
+     * messages that are due later.
+     */
+    public static final int MAX_DELAY_SECONDS = 900;
+
     /**
      * Dispatches a message to SQS. {@link MessageHandler}s will handle the
      * message based on a matching value of messageType.
@@ -32,11 +38,27 @@ public class MessageDispatcher {
         dispatchDelayed(messageBody, queueUrl, messageType, sqs, 0);
     }
 
+    /**
+     * Dispatches a message to SQS that becomes visible after the supplied
+     * delay.
+     * 
+     * @param messageBody
+     *            The body of the message.
+     * @param queueUrl
+     *            The SQS queue URL.
+     * @param messageType
+     *            The messageType.
+     * @param sqs
+     *            The SQS client.
+     * @param delaySeconds
+     *            The delay, at most {@link #MAX_DELAY_SECONDS}.
+     * @see MessageScheduler
+     */
     public static void dispatchDelayed(String messageBody, String queueUrl, String messageType, AmazonSQS sqs, int delaySeconds) {
         sendMessage(messageBody, queueUrl, prepareMessageAttributes(messageType), sqs, delaySeconds);
     }
 
-    private static Map<String, MessageAttributeValue> prepareMessageAttributes(String messageType) {
+    static Map<String, MessageAttributeValue> prepareMessageAttributes(String messageType) {
         Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
         messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE,
                 new MessageAttributeValue().withDataType("String").withStringValue(messageType));
@@ -18,6 +18,8 @@ public abstract class MessageHandler {
 
     private String messageType;
 
+    private MessageLimits limits;
+
     /**
      * Implementors are strongly encouraged to call this constructor with a
      * fixed value from their constructor(s).
@@ -33,6 +35,21 @@ public abstract class MessageHandler {
         this.messageType = messageType;
     }
 
+    /**
+     * Creates a handler whose messages are throttled by the
+     * {@link SqsListenerImpl} according to the supplied limits.
+     * 
+     * @param messageType
+     *            Identifies the type of messages that this handler will handle.
+     * @param limits
+     *            Rate limit and concurrency bulkhead for this message type, or
+     *            null when unlimited.
+     */
+    protected MessageHandler(String messageType, MessageLimits limits) {
+        this(messageType);
+        this.limits = limits;
+    }
+
     /**
      * Determines whether the supplied messages can be handled by this handler.
      * 
@@ -53,6 +70,21 @@ public abstract class MessageHandler {
         return attrValue.getStringValue().equalsIgnoreCase(messageType);
     }
 
+    /**
+     * @return The type of messages that this handler will handle.
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return The rate limit and concurrency bulkhead for this message type,
+     *         or null when unlimited.
+     */
+    public MessageLimits getLimits() {
+        return limits;
+    }
+
     /**
      * Implementations of this method must be able to handle messages of the
      * type that was supplied to the constructor.
@@ -0,0 +1,97 @@
+package io.interact.sqsdw.sqs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Declares the rate limit and concurrency bulkhead for messages of a single
+ * message type. Can be supplied to a {@link MessageHandler} directly or be
+ * read from the configuration yaml file.
+ *
+ * @see MessageThrottle
+ */
+public class MessageLimits {
+
+    /**
+     * Default number of seconds that a throttled message stays invisible on
+     * its queue before it is received again.
+     */
+    public static final int DEFAULT_DEFER_SECONDS = 10;
+
+    /**
+     * Maximum number of messages per second, 0 means unlimited.
+     */
+    @JsonProperty
+    private double permitsPerSecond;
+
+    /**
+     * Number of messages that may be handled in a burst above the rate limit,
+     * defaults to one second worth of permits.
+     */
+    @JsonProperty
+    private double burst;
+
+    /**
+     * Maximum number of messages that are handled concurrently, 0 means
+     * unlimited.
+     */
+    @JsonProperty
+    private int maxConcurrency;
+
+    /**
+     * Number of seconds that a throttled message stays invisible. Every
+     * deferral increases the receive count of the message, which counts
+     * towards the maxReceiveCount of a redrive policy.
+     */
+    @JsonProperty
+    private int deferSeconds = DEFAULT_DEFER_SECONDS;
+
+    public MessageLimits() {
+        // Used by Jackson.
+    }
+
+    /**
+     * @param permitsPerSecond
+     *            Maximum number of messages per second, 0 means unlimited.
+     * @param maxConcurrency
+     *            Maximum number of messages that are handled concurrently, 0
+     *            means unlimited.
+     */
+    public MessageLimits(double permitsPerSecond, int maxConcurrency) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    // Getters and setters.
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public void setPermitsPerSecond(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public double getBurst() {
+        return burst > 0 ? burst : Math.max(1, permitsPerSecond);
+    }
+
+    public void setBurst(double burst) {
+        this.burst = burst;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getDeferSeconds() {
+        return deferSeconds;
+    }
+
+    public void setDeferSeconds(int deferSeconds) {
+        this.deferSeconds = deferSeconds;
+    }
+}
@@ -0,0 +1,387 @@
+package io.interact.sqsdw.sqs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+/**
+ * Schedules messages for delivery at an arbitrary time in the future, beyond
+ * the maximum delay of SQS. Messages are held in a
+ * {@link HierarchicalTimingWheel} until they are due within
+ * {@link MessageDispatcher#MAX_DELAY_SECONDS}, then they are sent to SQS in
+ * batches with the remaining delay.
+ * <p>
+ * Failed sends are retried, only messages that SQS refuses individually
+ * (sender faults) are dropped. When a batch request fails as a whole, sends to
+ * that queue back off exponentially up to {@link #MAX_RETRY_DELAY}. Scheduled messages are kept in
+ * memory and are lost when the application stops, unless a
+ * {@link ScheduledMessageStore} is supplied; messages are delivered at least
+ * once in that case.
+ */
+public class MessageScheduler implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageScheduler.class);
+
+    private static final long TICK = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long MAX_DELAY = TimeUnit.SECONDS.toMillis(MessageDispatcher.MAX_DELAY_SECONDS);
+
+    /**
+     * Maximum time between retries of a queue whose batch requests fail.
+     */
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Caps the exponent of the retry delay, so the shift cannot overflow.
+     */
+    private static final int MAX_BACKOFF_EXPONENT = 16;
+
+    /**
+     * Maximum number of entries in an SQS batch request.
+     */
+    private static final int MAX_BATCH_SIZE = 10;
+
+    /**
+     * Maximum payload of an SQS batch request, which is also the maximum size
+     * of a single message.
+     */
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private final AmazonSQS sqs;
+    private final ScheduledMessageStore store;
+    private final HierarchicalTimingWheel<ScheduledMessage> wheel;
+    private final Set<String> pendingIds = new HashSet<>();
+
+    /**
+     * Queues whose batch requests fail, only accessed by the sending thread.
+     */
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this scheduler will
+     *            use to send messages.
+     */
+    public MessageScheduler(AmazonSQS sqs) {
+        this(sqs, null);
+    }
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this scheduler will
+     *            use to send messages.
+     * @param store
+     *            Persists scheduled messages, or null to keep them in memory
+     *            only.
+     */
+    public MessageScheduler(AmazonSQS sqs, ScheduledMessageStore store) {
+        this.sqs = sqs;
+        this.store = store;
+        this.wheel = new HierarchicalTimingWheel<>(TICK, System.currentTimeMillis());
+    }
+
+    /**
+     * Schedules a message for delivery. {@link MessageHandler}s will handle the
+     * message based on a matching value of messageType once it is delivered.
+     *
+     * @param messageBody
+     *            The body of the message.
+     * @param queueUrl
+     *            The SQS queue URL.
+     * @param messageType
+     *            The messageType.
+     * @param deliverAt
+     *            Time when the message should become visible on the queue.
+     * @return Identifier of the scheduled message.
+     */
+    public String schedule(String messageBody, String queueUrl, String messageType, Date deliverAt) {
+        ScheduledMessage message = new ScheduledMessage(UUID.randomUUID().toString(), queueUrl, messageType, messageBody,
+                deliverAt.getTime());
+        if (store != null) {
+            store.save(message);
+        }
+        enqueue(message);
+        return message.getId();
+    }
+
+    /**
+     * @return The number of messages that wait to be sent to SQS.
+     */
+    public synchronized int getPendingCount() {
+        return wheel.size();
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (store != null) {
+            int loaded = 0;
+            for (ScheduledMessage message : store.loadAll()) {
+                // Messages scheduled before start are saved and enqueued already.
+                if (enqueueIfAbsent(message)) {
+                    loaded++;
+                }
+            }
+            LOG.info(String.format("Loaded %s scheduled messages", loaded));
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    sendDueMessages();
+                } catch (Exception e) {
+                    LOG.error("An error occurred while sending scheduled messages", e);
+                }
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(TICK, TimeUnit.MILLISECONDS);
+        }
+        if (store == null && getPendingCount() > 0) {
+            LOG.warn(String.format("Discarding %s scheduled messages that were not persisted", getPendingCount()));
+        }
+    }
+
+    /**
+     * Messages are released from the wheel when they are due within the
+     * maximum SQS delay.
+     */
+    private void enqueue(ScheduledMessage message) {
+        enqueue(message, 0);
+    }
+
+    /**
+     * Enqueues the message, but releases it no earlier than notBefore.
+     */
+    private synchronized void enqueue(ScheduledMessage message, long notBefore) {
+        pendingIds.add(message.getId());
+        wheel.add(Math.max(message.getDeliverAt() - MAX_DELAY, notBefore), message);
+    }
+
+    private synchronized boolean enqueueIfAbsent(ScheduledMessage message) {
+        if (pendingIds.contains(message.getId())) {
+            return false;
+        }
+        enqueue(message);
+        return true;
+    }
+
+    private void sendDueMessages() {
+        long now = System.currentTimeMillis();
+        List<ScheduledMessage> due;
+        synchronized (this) {
+            due = wheel.advance(now);
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<ScheduledMessage>> byQueue = new LinkedHashMap<>();
+        for (ScheduledMessage message : due) {
+            List<ScheduledMessage> messages = byQueue.get(message.getQueueUrl());
+            if (messages == null) {
+                messages = new ArrayList<>();
+                byQueue.put(message.getQueueUrl(), messages);
+            }
+            messages.add(message);
+        }
+
+        for (Map.Entry<String, List<ScheduledMessage>> entry : byQueue.entrySet()) {
+            sendBatches(entry.getKey(), entry.getValue(), now);
+        }
+    }
+
+    /**
+     * Splits the messages into batches that stay within the maximum number of
+     * entries and the maximum payload of a batch request.
+     */
+    private void sendBatches(String queueUrl, List<ScheduledMessage> messages, long now) {
+        List<ScheduledMessage> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (ScheduledMessage message : messages) {
+            int size = sizeOf(message);
+            if (size > MAX_BATCH_BYTES) {
+                LOG.error(String.format("Dropping scheduled message '%s' of %s bytes that exceeds the maximum size of queue '%s'",
+                        message.getId(), size, queueUrl));
+                complete(message.getId());
+                continue;
+            }
+            if (batch.size() == MAX_BATCH_SIZE || batchBytes + size > MAX_BATCH_BYTES) {
+                sendBatch(queueUrl, batch, now);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(message);
+            batchBytes += size;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(queueUrl, batch, now);
+        }
+    }
+
+    /**
+     * Sends a batch and retries every message that was not sent, unless SQS
+     * refused it. Never throws, so the remaining batches are sent as well.
+     * While the queue backs off, the messages are put back until the next
+     * retry without a request.
+     */
+    private void sendBatch(String queueUrl, List<ScheduledMessage> messages, long now) {
+        Map<String, ScheduledMessage> unsent = new LinkedHashMap<>();
+        for (ScheduledMessage message : messages) {
+            unsent.put(message.getId(), message);
+        }
+
+        Backoff backoff = backoffs.get(queueUrl);
+        long retryAt = backoff != null ? backoff.retryAt : 0;
+        if (now < retryAt) {
+            for (ScheduledMessage message : messages) {
+                enqueue(message, retryAt);
+            }
+            return;
+        }
+
+        try {
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+            for (ScheduledMessage message : messages) {
+                entries.add(new SendMessageBatchRequestEntry(message.getId(), message.getMessageBody())
+                        .withMessageAttributes(MessageDispatcher.prepareMessageAttributes(message.getMessageType()))
+                        .withDelaySeconds(remainingDelaySeconds(message, now)));
+            }
+
+            SendMessageBatchResult result = sqs.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries));
+            if (backoffs.remove(queueUrl) != null) {
+                LOG.info(String.format("Resumed sending scheduled messages to queue '%s'", queueUrl));
+            }
+            retryAt = 0;
+
+            for (SendMessageBatchResultEntry success : result.getSuccessful()) {
+                if (unsent.remove(success.getId()) != null) {
+                    complete(success.getId());
+                }
+            }
+
+            for (BatchResultErrorEntry failure : result.getFailed()) {
+                if (Boolean.TRUE.equals(failure.isSenderFault())) {
+                    LOG.error(String.format("Dropping scheduled message '%s' that was refused by queue '%s': %s",
+                            failure.getId(), queueUrl, failure.getMessage()));
+                    if (unsent.remove(failure.getId()) != null) {
+                        complete(failure.getId());
+                    }
+                } else {
+                    LOG.warn(String.format("Failed to send scheduled message '%s' to queue '%s', retrying: %s",
+                            failure.getId(), queueUrl, failure.getMessage()));
+                }
+            }
+        } catch (Exception e) {
+            retryAt = backOff(queueUrl, unsent.size(), e, now);
+        } finally {
+            for (ScheduledMessage message : unsent.values()) {
+                enqueue(message, retryAt);
+            }
+        }
+    }
+
+    /**
+     * Doubles the retry delay of the queue. The stack trace is logged for the
+     * first failure only, so a long outage logs a single line per retry.
+     *
+     * @return The time of the next retry.
+     */
+    private long backOff(String queueUrl, int unsent, Exception e, long now) {
+        Backoff backoff = backoffs.get(queueUrl);
+        if (backoff == null) {
+            backoff = new Backoff();
+            backoffs.put(queueUrl, backoff);
+        }
+        backoff.failures++;
+        long delay = Math.min(MAX_RETRY_DELAY, TICK << Math.min(backoff.failures - 1, MAX_BACKOFF_EXPONENT));
+        backoff.retryAt = now + delay;
+
+        String message = String.format(
+                "Failed to send %s scheduled messages to queue '%s' (attempt %s), retrying in %s ms", unsent, queueUrl,
+                backoff.failures, delay);
+        if (backoff.failures == 1) {
+            LOG.warn(message, e);
+        } else {
+            LOG.warn(message + ": " + e);
+        }
+        return backoff.retryAt;
+    }
+
+    /**
+     * Forgets a message that was sent or dropped. A store failure is logged
+     * only, the message is sent again after a restart.
+     */
+    private void complete(String id) {
+        synchronized (this) {
+            pendingIds.remove(id);
+        }
+        if (store != null) {
+            try {
+                store.delete(id);
+            } catch (Exception e) {
+                LOG.error(String.format("Could not delete scheduled message '%s' from the store", id), e);
+            }
+        }
+    }
+
+    /**
+     * @return The size of the message as SQS counts it: the body and the
+     *         names, types and values of its attributes.
+     */
+    private static int sizeOf(ScheduledMessage message) {
+        int size = utf8Length(message.getMessageBody());
+        for (Map.Entry<String, MessageAttributeValue> attribute : MessageDispatcher.prepareMessageAttributes(
+                message.getMessageType()).entrySet()) {
+            size += utf8Length(attribute.getKey()) + utf8Length(attribute.getValue().getDataType())
+                    + utf8Length(attribute.getValue().getStringValue());
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    private static int remainingDelaySeconds(ScheduledMessage message, long now) {
+        long remaining = TimeUnit.MILLISECONDS.toSeconds(message.getDeliverAt() - now + TimeUnit.SECONDS.toMillis(1) - 1);
+        return (int) Math.max(0, Math.min(MessageDispatcher.MAX_DELAY_SECONDS, remaining));
+    }
+
+    private static class Backoff {
+
+        private int failures;
+        private long retryAt;
+    }
+}
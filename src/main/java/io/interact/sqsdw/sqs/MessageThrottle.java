@@ -0,0 +1,59 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Enforces the {@link MessageLimits} of a single message type with a
+ * {@link TokenBucket} and a concurrency bulkhead. Permits are acquired without
+ * blocking, so a full bulkhead never ties up a thread.
+ */
+public class MessageThrottle {
+
+    private final TokenBucket rateLimiter;
+    private final Semaphore bulkhead;
+    private final int deferSeconds;
+
+    public MessageThrottle(MessageLimits limits) {
+        rateLimiter = limits.getPermitsPerSecond() > 0 ? new TokenBucket(limits.getPermitsPerSecond(), limits.getBurst()) : null;
+        bulkhead = limits.getMaxConcurrency() > 0 ? new Semaphore(limits.getMaxConcurrency()) : null;
+        deferSeconds = limits.getDeferSeconds();
+    }
+
+    /**
+     * Acquires a slot in the bulkhead and a rate limit token. Callers must
+     * call {@link #release()} when this method returned true and the message
+     * has been handled.
+     *
+     * @return True when the message may be handled now, false when it should
+     *         be deferred.
+     */
+    public boolean tryAcquire() {
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            return false;
+        }
+
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            release();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the bulkhead slot that was taken by {@link #tryAcquire()}.
+     */
+    public void release() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * @return The number of seconds that a deferred message should stay
+     *         invisible on its queue.
+     */
+    public int getDeferSeconds() {
+        return deferSeconds;
+    }
+}
@@ -0,0 +1,254 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Listens to an ordered list of queues that share one set of
+ * {@link MessageHandler}s and worker threads, draining higher priority queues
+ * before lower priority queues.
+ * <p>
+ * Every poll checks the queues from high to low priority, so workers that
+ * become idle go to the highest tier with messages first. Lower tiers never
+ * take the last reserved workers, which keeps capacity for urgent messages
+ * when a lower tier has a large backlog.
+ * <p>
+ * Higher tiers are short polled while a lower tier can still receive, so the
+ * listener moves on to the backlog without waiting. A message that a short
+ * poll misses is found by one of the next polls, which follow each other
+ * quickly while the backlog is drained. When lower tiers cannot receive, the
+ * highest tier is long polled for one second instead, as is the lowest tier,
+ * which keeps the listener from spinning. A lower tier that was not polled
+ * for longer than the maximum starvation time is polled first for up to
+ * {@link #STARVED_TIER_POLLS} polls while it has messages, so it keeps making
+ * progress while higher tiers are busy.
+ */
+public class PrioritySqsListener extends SqsListenerImpl {
+
+    public static final long DEFAULT_MAX_STARVATION = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Maximum number of consecutive polls of a starved tier before the higher
+     * tiers are polled again.
+     */
+    public static final int STARVED_TIER_POLLS = 5;
+
+    private static final int SHORT_POLL_WAIT_SECONDS = 0;
+
+    private static final int LONG_POLL_WAIT_SECONDS = 1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrioritySqsListener.class);
+
+    private final List<String> queueUrls;
+    private final long maxStarvation;
+    private final long[] lastPolled;
+    private final int reservedWorkers;
+
+    private int starvedTier = -1;
+    private int starvedPollsLeft;
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this listener will use
+     *            to connect to its queues.
+     * @param queueUrls
+     *            URLs of the queues where this instance will listen to, the
+     *            highest priority first.
+     * @param handlers
+     *            All handlers will be called for every message that this
+     *            instance receives.
+     * @param workerThreads
+     *            Number of threads that handle messages of all queues
+     *            concurrently, or 0 to handle them on the polling thread.
+     */
+    public PrioritySqsListener(AmazonSQS sqs, List<String> queueUrls, Set<MessageHandler> handlers, int workerThreads) {
+        this(sqs, queueUrls, handlers, workerThreads, DEFAULT_MAX_STARVATION);
+    }
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this listener will use
+     *            to connect to its queues.
+     * @param queueUrls
+     *            URLs of the queues where this instance will listen to, the
+     *            highest priority first.
+     * @param handlers
+     *            All handlers will be called for every message that this
+     *            instance receives.
+     * @param workerThreads
+     *            Number of threads that handle messages of all queues
+     *            concurrently, or 0 to handle them on the polling thread.
+     * @param maxStarvation
+     *            Number of milliseconds after which a lower priority queue is
+     *            polled before the higher priority queues.
+     */
+    public PrioritySqsListener(AmazonSQS sqs, List<String> queueUrls, Set<MessageHandler> handlers, int workerThreads,
+            long maxStarvation) {
+        this(sqs, queueUrls, handlers, workerThreads, maxStarvation, defaultReservedWorkers(workerThreads));
+    }
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this listener will use
+     *            to connect to its queues.
+     * @param queueUrls
+     *            URLs of the queues where this instance will listen to, the
+     *            highest priority first.
+     * @param handlers
+     *            All handlers will be called for every message that this
+     *            instance receives.
+     * @param workerThreads
+     *            Number of threads that handle messages of all queues
+     *            concurrently, or 0 to handle them on the polling thread.
+     * @param maxStarvation
+     *            Number of milliseconds after which a lower priority queue is
+     *            polled before the higher priority queues.
+     * @param reservedWorkers
+     *            Number of workers that only the highest priority queue uses,
+     *            defaults to a quarter of the worker threads.
+     */
+    public PrioritySqsListener(AmazonSQS sqs, List<String> queueUrls, Set<MessageHandler> handlers, int workerThreads,
+            long maxStarvation, int reservedWorkers) {
+        super(sqs, highestPriority(queueUrls), handlers, workerThreads);
+        if (reservedWorkers < 0 || (reservedWorkers > 0 && reservedWorkers >= workerThreads)) {
+            throw new IllegalArgumentException("The reserved workers must be fewer than the worker threads!");
+        }
+        this.queueUrls = new ArrayList<>(queueUrls);
+        this.maxStarvation = maxStarvation;
+        this.reservedWorkers = reservedWorkers;
+
+        lastPolled = new long[queueUrls.size()];
+        Arrays.fill(lastPolled, System.currentTimeMillis());
+    }
+
+    private static String highestPriority(List<String> queueUrls) {
+        if (queueUrls == null || queueUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one queue URL is required!");
+        }
+
+        return queueUrls.get(0);
+    }
+
+    private static int defaultReservedWorkers(int workerThreads) {
+        return workerThreads > 1 ? Math.max(1, workerThreads / 4) : 0;
+    }
+
+    @Override
+    void poll() throws InterruptedException {
+        if (hasWorkers()) {
+            awaitIdleWorker();
+        }
+
+        if (starvedPollsLeft == 0) {
+            starvedTier = findStarvedTier();
+            if (starvedTier >= 0) {
+                LOG.debug(String.format("Priority tier %s was not polled for %s ms, polling it first", starvedTier,
+                        maxStarvation));
+                starvedPollsLeft = STARVED_TIER_POLLS;
+            }
+        }
+        if (starvedPollsLeft > 0) {
+            starvedPollsLeft--;
+            if (pollTier(starvedTier, SHORT_POLL_WAIT_SECONDS)) {
+                return;
+            }
+            starvedPollsLeft = 0;
+        }
+
+        int lowest = queueUrls.size() - 1;
+        for (int tier = 0; tier <= lowest; tier++) {
+            boolean longPoll = tier == lowest || !lowerTiersCanReceive();
+            if (pollTier(tier, longPoll ? LONG_POLL_WAIT_SECONDS : SHORT_POLL_WAIT_SECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return True when lower tiers have idle workers beyond the reserved
+     *         workers.
+     */
+    private boolean lowerTiersCanReceive() {
+        return !hasWorkers() || getIdleWorkerCount() > reservedWorkers;
+    }
+
+    /**
+     * @return The lower tier that waited longest beyond the maximum starvation
+     *         time, or -1 when no tier is starved.
+     */
+    private int findStarvedTier() {
+        long now = System.currentTimeMillis();
+        int starved = -1;
+        long longest = maxStarvation;
+        for (int tier = 1; tier < lastPolled.length; tier++) {
+            long waited = now - lastPolled[tier];
+            if (waited > longest) {
+                starved = tier;
+                longest = waited;
+            }
+        }
+        return starved;
+    }
+
+    /**
+     * @return True when messages were received from the tier, false when it
+     *         was empty or could not receive without the reserved workers.
+     */
+    private boolean pollTier(int tier, int waitTimeSeconds) {
+        String queueUrl = queueUrls.get(tier);
+        if (!hasWorkers()) {
+            lastPolled[tier] = System.currentTimeMillis();
+            List<Message> messages = receive(queueUrl, waitTimeSeconds, null);
+            process(queueUrl, messages);
+            return !messages.isEmpty();
+        }
+
+        try {
+            int capacity = reserveWorkers(tier == 0 ? 0 : reservedWorkers);
+            if (capacity == 0) {
+                return false;
+            }
+            lastPolled[tier] = System.currentTimeMillis();
+            List<Message> messages = receive(queueUrl, waitTimeSeconds, capacity);
+            process(queueUrl, messages);
+            return !messages.isEmpty();
+        } finally {
+            releaseWorkers();
+        }
+    }
+
+    /**
+     * @return The combined attributes of all queues.
+     */
+    @Override
+    QueueAttributes getQueueAttributes() {
+        long visible = 0;
+        long notVisible = 0;
+        long fetchedAt = 0;
+        for (String queueUrl : queueUrls) {
+            QueueAttributes attributes = getQueueAttributes(queueUrl);
+            visible += attributes.getVisibleMessages();
+            notVisible += attributes.getNotVisibleMessages();
+            fetchedAt = Math.max(fetchedAt, attributes.getFetchedAt());
+        }
+        return new QueueAttributes(visible, notVisible, fetchedAt);
+    }
+
+    /**
+     * @return The URLs of the queues where this instance listens to, the
+     *         highest priority first.
+     */
+    public List<String> getQueueUrls() {
+        return Collections.unmodifiableList(queueUrls);
+    }
+}
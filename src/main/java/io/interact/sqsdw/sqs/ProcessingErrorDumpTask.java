@@ -0,0 +1,49 @@
+package io.interact.sqsdw.sqs;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.List;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import com.google.common.collect.ImmutableMultimap;
+
+/**
+ * Admin task that switches the full message dump of
+ * {@link ProcessingErrorLogger}s on or off, register it with the admin
+ * environment:
+ *
+ * <pre>
+ * env.admin().addTask(new ProcessingErrorDumpTask(Arrays.asList(sqsListener.getErrorLogger())));
+ * </pre>
+ *
+ * Then call <code>POST /tasks/sqs-error-dump?enabled=true</code> on the admin
+ * port, omit the parameter to show the current setting.
+ */
+public class ProcessingErrorDumpTask extends Task {
+
+    private static final String PARAM_ENABLED = "enabled";
+
+    private final List<ProcessingErrorLogger> errorLoggers;
+
+    public ProcessingErrorDumpTask(List<ProcessingErrorLogger> errorLoggers) {
+        super("sqs-error-dump");
+        this.errorLoggers = errorLoggers;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        Collection<String> values = parameters.get(PARAM_ENABLED);
+        if (!values.isEmpty()) {
+            boolean enabled = Boolean.parseBoolean(values.iterator().next());
+            for (ProcessingErrorLogger errorLogger : errorLoggers) {
+                errorLogger.setFullDump(enabled);
+            }
+        }
+
+        for (ProcessingErrorLogger errorLogger : errorLoggers) {
+            output.println("Full message dump " + (errorLogger.isFullDump() ? "enabled" : "disabled"));
+        }
+        output.flush();
+    }
+}
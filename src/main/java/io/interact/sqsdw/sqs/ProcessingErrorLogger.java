@@ -0,0 +1,253 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Logs message processing errors as single line, structured events with a
+ * truncated body. Events are sampled per message type (case insensitive) and
+ * exception class, so a burst of failures doesn't flood the log; the number of
+ * failures per message type and exception class is logged periodically
+ * instead. Only the first event per message type and exception class carries
+ * the stack trace.
+ * <p>
+ * Message types are controlled by producers, so at most
+ * {@link #MAX_DISTINCT_KEYS} message type and exception class combinations are
+ * tracked at once; further combinations are counted as {@code other}. A
+ * combination that had no failures during a summary interval is forgotten.
+ * <p>
+ * The full message dump can be switched on for debugging with
+ * {@link #setFullDump(boolean)}, e.g. through the
+ * {@link ProcessingErrorDumpTask}.
+ */
+public class ProcessingErrorLogger {
+
+    public static final int DEFAULT_MAX_BODY_LENGTH = 256;
+
+    public static final double DEFAULT_SAMPLES_PER_SECOND = 1;
+
+    public static final long DEFAULT_SUMMARY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Maximum number of message type and exception class combinations that
+     * are sampled and counted separately.
+     */
+    public static final int MAX_DISTINCT_KEYS = 100;
+
+    /**
+     * Number of events per message type and exception class that are logged
+     * at once before sampling kicks in.
+     */
+    private static final int SAMPLE_BURST = 5;
+
+    private static final String UNKNOWN_TYPE = "unknown";
+
+    private static final String OTHER_KEY = "other";
+
+    private final ConcurrentMap<String, Sampler> samplers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final AtomicLong lastSummary = new AtomicLong(System.currentTimeMillis());
+    private final Logger log;
+    private final int maxBodyLength;
+    private final double samplesPerSecond;
+    private final long summaryInterval;
+
+    private volatile boolean fullDump;
+
+    /**
+     * @param log
+     *            The logger to write events to.
+     */
+    public ProcessingErrorLogger(Logger log) {
+        this(log, DEFAULT_MAX_BODY_LENGTH, DEFAULT_SAMPLES_PER_SECOND, DEFAULT_SUMMARY_INTERVAL);
+    }
+
+    /**
+     * @param log
+     *            The logger to write events to.
+     * @param maxBodyLength
+     *            Maximum number of body characters in an event.
+     * @param samplesPerSecond
+     *            Number of events per message type and exception class that
+     *            are logged per second.
+     * @param summaryInterval
+     *            Number of milliseconds between failure summaries.
+     */
+    public ProcessingErrorLogger(Logger log, int maxBodyLength, double samplesPerSecond, long summaryInterval) {
+        this.log = log;
+        this.maxBodyLength = maxBodyLength;
+        this.samplesPerSecond = samplesPerSecond;
+        this.summaryInterval = summaryInterval;
+    }
+
+    /**
+     * Logs a message that could not be processed.
+     *
+     * @param queueUrl
+     *            The queue where the message was received from.
+     * @param msg
+     *            The message.
+     * @param e
+     *            The cause of the failure.
+     */
+    public void log(String queueUrl, Message msg, Exception e) {
+        String key = getKey(getMessageType(msg).toLowerCase(Locale.ROOT) + "/" + e.getClass().getName());
+        count(key);
+
+        if (fullDump) {
+            logFullDump(msg, e);
+        } else {
+            Sampler sampler = getSampler(key);
+            if (sampler.bucket.tryAcquire()) {
+                String event = formatEvent(queueUrl, msg, e, sampler.suppressed.getAndSet(0));
+                if (sampler.traced.compareAndSet(false, true)) {
+                    log.error(event, e);
+                } else {
+                    log.error(event);
+                }
+            } else {
+                sampler.suppressed.incrementAndGet();
+            }
+        }
+
+        emitSummaryIfDue();
+    }
+
+    /**
+     * Logs the number of failures per message type and exception class since
+     * the previous summary, when the summary interval has passed. Called by
+     * the listener on every poll, so summaries are emitted when failures stop.
+     */
+    public void emitSummaryIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastSummary.get();
+        if (now - last < summaryInterval || !lastSummary.compareAndSet(last, now)) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Entry<String, AtomicLong> entry : failures.entrySet()) {
+            long count = entry.getValue().getAndSet(0);
+            if (count > 0) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(entry.getKey()).append('=').append(count);
+            } else if (failures.remove(entry.getKey(), entry.getValue())) {
+                samplers.remove(entry.getKey());
+            }
+        }
+        if (builder.length() > 0) {
+            log.warn(String.format("event=message_processing_failures intervalSeconds=%s counts={%s}",
+                    TimeUnit.MILLISECONDS.toSeconds(now - last), builder));
+        }
+    }
+
+    /**
+     * @param fullDump
+     *            True to log every failure with the full message, false to
+     *            log sampled events.
+     */
+    public void setFullDump(boolean fullDump) {
+        this.fullDump = fullDump;
+    }
+
+    public boolean isFullDump() {
+        return fullDump;
+    }
+
+    /**
+     * Folds the key into {@link #OTHER_KEY} once the maximum number of
+     * distinct keys is tracked.
+     */
+    private String getKey(String key) {
+        if (failures.containsKey(key) || failures.size() < MAX_DISTINCT_KEYS) {
+            return key;
+        }
+        return OTHER_KEY;
+    }
+
+    private void count(String key) {
+        AtomicLong counter = failures.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = failures.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    private Sampler getSampler(String key) {
+        Sampler sampler = samplers.get(key);
+        if (sampler == null) {
+            Sampler created = new Sampler(new TokenBucket(samplesPerSecond, SAMPLE_BURST));
+            sampler = samplers.putIfAbsent(key, created);
+            if (sampler == null) {
+                sampler = created;
+            }
+        }
+        return sampler;
+    }
+
+    private String formatEvent(String queueUrl, Message msg, Exception e, long suppressed) {
+        String body = msg.getBody();
+        return new StringBuilder().append("event=message_processing_failed queue=").append(queueUrl)
+                .append(" messageType=").append(getMessageType(msg)).append(" messageId=").append(msg.getMessageId())
+                .append(" exception=").append(e.getClass().getName())
+                .append(" error=").append(quote(e.getMessage(), maxBodyLength))
+                .append(" bodyLength=").append(body != null ? body.length() : 0)
+                .append(" body=").append(quote(body, maxBodyLength))
+                .append(" suppressed=").append(suppressed).toString();
+    }
+
+    private void logFullDump(Message msg, Exception e) {
+        StringBuilder builder = new StringBuilder().append("An error occurred while processing the following message:")
+                .append("\n\tMessageId:     ").append(msg.getMessageId()).append("\n\tReceiptHandle: ")
+                .append(msg.getReceiptHandle()).append("\n\tMD5OfBody:     ").append(msg.getMD5OfBody())
+                .append("\n\tBody:          ").append(msg.getBody());
+
+        for (Entry<String, MessageAttributeValue> entry : msg.getMessageAttributes().entrySet()) {
+            builder.append("\n\tAttribute" + "\n\t\tName:  " + entry.getKey() + "\n\t\tValue: " + entry.getValue());
+        }
+        log.error(builder.toString(), e);
+    }
+
+    private static String getMessageType(Message msg) {
+        Map<String, MessageAttributeValue> attributes = msg.getMessageAttributes();
+        MessageAttributeValue type = attributes != null ? attributes.get(MessageHandler.ATTR_MESSAGE_TYPE) : null;
+        return type != null && type.getStringValue() != null ? type.getStringValue() : UNKNOWN_TYPE;
+    }
+
+    /**
+     * Truncates the value and escapes it as a single line, quoted string.
+     */
+    private static String quote(String value, int maxLength) {
+        if (value == null) {
+            return "null";
+        }
+
+        String truncated = value.length() > maxLength ? value.substring(0, maxLength) + "..." : value;
+        return '"' + truncated.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r") + '"';
+    }
+
+    private static class Sampler {
+
+        private final TokenBucket bucket;
+        private final AtomicLong suppressed = new AtomicLong();
+        private final AtomicBoolean traced = new AtomicBoolean();
+
+        Sampler(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.interact.sqsdw.sqs;
+
+/**
+ * Snapshot of the approximate message counts of an SQS queue.
+ *
+ * @see QueueAttributesCache
+ */
+public class QueueAttributes {
+
+    private final long visibleMessages;
+    private final long notVisibleMessages;
+    private final long fetchedAt;
+
+    /**
+     * @param visibleMessages
+     *            Approximate number of messages that are waiting to be
+     *            received.
+     * @param notVisibleMessages
+     *            Approximate number of messages that were received but not yet
+     *            deleted.
+     * @param fetchedAt
+     *            Time in milliseconds when the attributes were retrieved.
+     */
+    public QueueAttributes(long visibleMessages, long notVisibleMessages, long fetchedAt) {
+        this.visibleMessages = visibleMessages;
+        this.notVisibleMessages = notVisibleMessages;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public long getVisibleMessages() {
+        return visibleMessages;
+    }
+
+    public long getNotVisibleMessages() {
+        return notVisibleMessages;
+    }
+
+    /**
+     * @return All messages on the queue, received or not.
+     */
+    public long getTotalMessages() {
+        return visibleMessages + notVisibleMessages;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
@@ -0,0 +1,96 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+
+/**
+ * Caches {@link QueueAttributes} so that frequent health checks don't call SQS
+ * on every request. Failures are cached as well, so an unavailable queue isn't
+ * retried more than once per TTL.
+ */
+public class QueueAttributesCache {
+
+    public static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String ATTR_VISIBLE = "ApproximateNumberOfMessages";
+    private static final String ATTR_NOT_VISIBLE = "ApproximateNumberOfMessagesNotVisible";
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueAttributesCache.class);
+
+    private final Map<String, QueueAttributes> cache = new HashMap<>();
+    private final Map<String, Failure> failures = new HashMap<>();
+    private final AmazonSQS sqs;
+    private final long ttl;
+
+    /**
+     * @param sqs
+     *            The SQS client.
+     * @param ttl
+     *            Number of milliseconds that the attributes of a queue are
+     *            cached.
+     */
+    public QueueAttributesCache(AmazonSQS sqs, long ttl) {
+        this.sqs = sqs;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cached attributes of the queue, retrieves them from SQS when
+     * they are missing or expired. Concurrent callers wait for a single
+     * retrieval.
+     *
+     * @param queueUrl
+     *            The SQS queue URL.
+     * @return The attributes of the queue.
+     * @throws RuntimeException
+     *             When the attributes could not be retrieved within the TTL.
+     */
+    public synchronized QueueAttributes get(String queueUrl) {
+        long now = System.currentTimeMillis();
+        Failure failure = failures.get(queueUrl);
+        if (failure != null && now - failure.failedAt < ttl) {
+            throw failure.cause;
+        }
+
+        QueueAttributes attributes = cache.get(queueUrl);
+        if (attributes == null || now - attributes.getFetchedAt() >= ttl) {
+            GetQueueAttributesRequest request = new GetQueueAttributesRequest(queueUrl).withAttributeNames(ATTR_VISIBLE,
+                    ATTR_NOT_VISIBLE);
+            Map<String, String> values;
+            try {
+                values = sqs.getQueueAttributes(request).getAttributes();
+            } catch (RuntimeException e) {
+                LOG.warn(String.format("Could not retrieve the attributes of queue '%s', retrying in %s ms", queueUrl, ttl),
+                        e);
+                failures.put(queueUrl, new Failure(now, e));
+                throw e;
+            }
+            failures.remove(queueUrl);
+            attributes = new QueueAttributes(parse(values.get(ATTR_VISIBLE)), parse(values.get(ATTR_NOT_VISIBLE)), now);
+            cache.put(queueUrl, attributes);
+        }
+        return attributes;
+    }
+
+    private static long parse(String value) {
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static class Failure {
+
+        private final long failedAt;
+        private final RuntimeException cause;
+
+        Failure(long failedAt, RuntimeException cause) {
+            this.failedAt = failedAt;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.interact.sqsdw.sqs;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Message that is held by the {@link MessageScheduler} until it can be sent to
+ * SQS with a delay.
+ */
+public class ScheduledMessage {
+
+    @JsonProperty
+    private final String id;
+
+    @JsonProperty
+    private final String queueUrl;
+
+    @JsonProperty
+    private final String messageType;
+
+    @JsonProperty
+    private final String messageBody;
+
+    @JsonProperty
+    private final long deliverAt;
+
+    /**
+     * @param id
+     *            Unique identifier of the scheduled message.
+     * @param queueUrl
+     *            The SQS queue URL.
+     * @param messageType
+     *            The messageType.
+     * @param messageBody
+     *            The body of the message.
+     * @param deliverAt
+     *            Time in milliseconds when the message should become visible
+     *            on the queue.
+     */
+    @JsonCreator
+    public ScheduledMessage(@JsonProperty("id") String id, @JsonProperty("queueUrl") String queueUrl,
+            @JsonProperty("messageType") String messageType, @JsonProperty("messageBody") String messageBody,
+            @JsonProperty("deliverAt") long deliverAt) {
+        this.id = id;
+        this.queueUrl = queueUrl;
+        this.messageType = messageType;
+        this.messageBody = messageBody;
+        this.deliverAt = deliverAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getQueueUrl() {
+        return queueUrl;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public String getMessageBody() {
+        return messageBody;
+    }
+
+    public long getDeliverAt() {
+        return deliverAt;
+    }
+}
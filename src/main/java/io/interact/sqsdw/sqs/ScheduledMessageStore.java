@@ -0,0 +1,31 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.Collection;
+
+/**
+ * Persists the messages of a {@link MessageScheduler}, so that they survive a
+ * restart of the application.
+ */
+public interface ScheduledMessageStore {
+
+    /**
+     * Stores a message that was scheduled.
+     *
+     * @param message
+     *            The scheduled message.
+     */
+    void save(ScheduledMessage message);
+
+    /**
+     * Removes a message that was sent to SQS.
+     *
+     * @param id
+     *            Identifier of the scheduled message.
+     */
+    void delete(String id);
+
+    /**
+     * @return All stored messages, called when the scheduler starts.
+     */
+    Collection<ScheduledMessage> loadAll();
+}
@@ -1,26 +1,65 @@
 package io.interact.sqsdw.sqs;
 
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
 import com.codahale.metrics.health.HealthCheck;
 
 /**
- * Implements a health check for the {@link SqsListener}.
- * 
+ * Implements a health check for the {@link SqsListener}. The listener is
+ * unhealthy when it cannot receive messages. A
+ * {@link StatusReportingSqsListener} is degraded when its
+ * {@link SqsListenerStatus} exceeds one of the supplied thresholds, which is
+ * reported as healthy with a message that starts with {@link #DEGRADED}, in
+ * line with the {@link SqsListenerStatusServlet}.
+ *
  * @author Bas Cancrinus
  */
 public class SqsListenerHealthCheck extends HealthCheck {
 
+    public static final String DEGRADED = "DEGRADED";
+
     private SqsListener sqsListener;
 
+    private StatusReportingSqsListener statusReporter;
+
+    private SqsListenerHealthThresholds thresholds;
+
     public SqsListenerHealthCheck(SqsListener sqsListener) {
         this.sqsListener = sqsListener;
+        if (sqsListener instanceof StatusReportingSqsListener) {
+            this.statusReporter = (StatusReportingSqsListener) sqsListener;
+        }
+        this.thresholds = new SqsListenerHealthThresholds();
+    }
+
+    public SqsListenerHealthCheck(StatusReportingSqsListener sqsListener, SqsListenerHealthThresholds thresholds) {
+        this.sqsListener = sqsListener;
+        this.statusReporter = sqsListener;
+        this.thresholds = thresholds;
     }
 
     @Override
     protected Result check() throws Exception {
-        if (sqsListener.isHealthy()) {
-            return Result.healthy();
-        } else {
+        if (!sqsListener.isHealthy()) {
             return Result.unhealthy("There is a problem with the SQS listener for queue: " + sqsListener.getQueueUrl());
         }
+
+        if (statusReporter == null) {
+            return Result.healthy();
+        }
+
+        SqsListenerStatus status = statusReporter.getStatus(thresholds.requiresQueueAttributes());
+        List<String> violations = thresholds.findViolations(status);
+        if (!violations.isEmpty()) {
+            return Result.healthy(String.format("%s: the SQS listener for queue %s is behind: %s", DEGRADED,
+                    sqsListener.getQueueUrl(), StringUtils.join(violations, ", ")));
+        }
+
+        return Result.healthy(String.format(
+                "depth=%s, oldestAge=%ss, lastReceive=%ss ago, processing=%.2f/s, arrival=%.2f/s, inFlight=%s",
+                status.getQueueDepth(), status.getOldestMessageAgeSeconds(), status.getSecondsSinceLastReceive(),
+                status.getProcessingRate(), status.getArrivalRate(), status.getInFlight()));
     }
 }
@@ -0,0 +1,117 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Thresholds that mark an {@link SqsListener} as degraded. Can be read from
+ * the configuration yaml file, a value of 0 disables the threshold.
+ *
+ * @see SqsListenerHealthCheck
+ */
+public class SqsListenerHealthThresholds {
+
+    @JsonProperty
+    private long maxQueueDepth;
+
+    @JsonProperty
+    private long maxOldestMessageAgeSeconds;
+
+    @JsonProperty
+    private long maxSecondsSinceLastReceive;
+
+    /**
+     * Minimum ratio of processing rate to arrival rate, e.g. 0.9 marks the
+     * listener degraded when it processes less than 90% of the arrivals.
+     */
+    @JsonProperty
+    private double minProcessingToArrivalRatio;
+
+    @JsonProperty
+    private int maxInFlight;
+
+    /**
+     * Compares the supplied status with the thresholds.
+     *
+     * @param status
+     *            The status of a listener.
+     * @return A description of every threshold that was exceeded, empty when
+     *         the listener is keeping up.
+     */
+    public List<String> findViolations(SqsListenerStatus status) {
+        List<String> violations = new ArrayList<>();
+        if (maxQueueDepth > 0 && status.getQueueDepth() > maxQueueDepth) {
+            violations.add(String.format("queue depth %s exceeds %s", status.getQueueDepth(), maxQueueDepth));
+        }
+        if (maxOldestMessageAgeSeconds > 0 && status.getOldestMessageAgeSeconds() > maxOldestMessageAgeSeconds) {
+            violations.add(String.format("oldest message age %ss exceeds %ss", status.getOldestMessageAgeSeconds(),
+                    maxOldestMessageAgeSeconds));
+        }
+        if (maxSecondsSinceLastReceive > 0
+                && (status.getSecondsSinceLastReceive() == SqsListenerStatus.UNKNOWN || status.getSecondsSinceLastReceive() > maxSecondsSinceLastReceive)) {
+            violations.add(String.format("no successful receive for %ss, limit is %ss", status.getSecondsSinceLastReceive(),
+                    maxSecondsSinceLastReceive));
+        }
+        if (minProcessingToArrivalRatio > 0 && status.getArrivalRate() > 0
+                && status.getProcessingRate() / status.getArrivalRate() < minProcessingToArrivalRatio) {
+            violations.add(String.format("processing rate %.2f/s is behind arrival rate %.2f/s", status.getProcessingRate(),
+                    status.getArrivalRate()));
+        }
+        if (maxInFlight > 0 && status.getInFlight() > maxInFlight) {
+            violations.add(String.format("%s messages in flight exceeds %s", status.getInFlight(), maxInFlight));
+        }
+        return violations;
+    }
+
+    /**
+     * @return True when a threshold depends on the queue depth or arrival
+     *         rate, which require the attributes of the queue.
+     */
+    public boolean requiresQueueAttributes() {
+        return maxQueueDepth > 0 || minProcessingToArrivalRatio > 0;
+    }
+
+    // Getters and setters.
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public void setMaxQueueDepth(long maxQueueDepth) {
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    public long getMaxOldestMessageAgeSeconds() {
+        return maxOldestMessageAgeSeconds;
+    }
+
+    public void setMaxOldestMessageAgeSeconds(long maxOldestMessageAgeSeconds) {
+        this.maxOldestMessageAgeSeconds = maxOldestMessageAgeSeconds;
+    }
+
+    public long getMaxSecondsSinceLastReceive() {
+        return maxSecondsSinceLastReceive;
+    }
+
+    public void setMaxSecondsSinceLastReceive(long maxSecondsSinceLastReceive) {
+        this.maxSecondsSinceLastReceive = maxSecondsSinceLastReceive;
+    }
+
+    public double getMinProcessingToArrivalRatio() {
+        return minProcessingToArrivalRatio;
+    }
+
+    public void setMinProcessingToArrivalRatio(double minProcessingToArrivalRatio) {
+        this.minProcessingToArrivalRatio = minProcessingToArrivalRatio;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+}
@@ -1,8 +1,16 @@
 package io.interact.sqsdw.sqs;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.interact.sqsdw.AwsFactory;
@@ -10,9 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
-import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -20,15 +28,43 @@ import com.google.inject.name.Named;
 /**
  * Listens to a queue and dispatches received messages to the supplied
  * {@link MessageHandler} implementation.
- * 
+ * <p>
+ * With worker threads, the listener receives at most as many messages as
+ * there are idle workers and waits while all workers are busy, so messages
+ * stay on the queue until they can be handled.
+ * <p>
+ * Messages of handlers that declare {@link MessageLimits} are throttled: when
+ * the rate limit is exceeded or the bulkhead is full, the message is deferred
+ * by changing its visibility timeout. The poll loop pauses briefly in
+ * proportion to the share of deferred messages in a batch, other message
+ * types keep flowing.
+ * <p>
+ * Note that every receive of a deferred message increases its
+ * ApproximateReceiveCount. With a redrive policy on the queue, a message that
+ * is throttled often enough moves to the dead-letter queue without ever
+ * failing, so set maxReceiveCount with the expected deferrals in mind.
+ *
  * @see AwsFactory
  * @see SqsListenerHealthCheck
  * @author Bas Cancrinus
  */
-public class SqsListenerImpl implements SqsListener {
+public class SqsListenerImpl implements StatusReportingSqsListener {
 
     private static final int SLEEP_ON_ERROR = 5000;
 
+    /**
+     * Maximum pause of the poll loop, when all messages of a batch were
+     * deferred.
+     */
+    private static final int MAX_SLEEP_ON_THROTTLE = 250;
+
+    /**
+     * Maximum number of messages that SQS returns per receive.
+     */
+    private static final int MAX_MESSAGES = 10;
+
+    private static final int WORKER_SHUTDOWN_SECONDS = 30;
+
     private static final Logger LOG = LoggerFactory.getLogger(SqsListenerImpl.class);
 
     /**
@@ -36,13 +72,37 @@ public class SqsListenerImpl implements SqsListener {
      */
     private static final String ATTR_ALL = "All";
 
+    /**
+     * Handles messages on the calling (polling) thread.
+     */
+    private static final Executor CALLER_RUNS = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private final AtomicBoolean healthy = new AtomicBoolean(true);
     private final AmazonSQS sqs;
     private final String sqsListenQueueUrl;
     private final Set<MessageHandler> handlers;
+    private final Map<MessageHandler, MessageThrottle> throttles = new HashMap<>();
+    private final int workerThreads;
+    private final QueueAttributesCache queueAttributes;
+    private final SqsListenerMetrics metrics = new SqsListenerMetrics();
+    private final ProcessingErrorLogger errorLogger = new ProcessingErrorLogger(LOG);
     private final String interruptedMsg;
 
     private Thread pollingThread;
+    private ExecutorService workers;
+    private Semaphore idleWorkers;
+
+    /**
+     * Number of idle workers that the polling thread reserved for the messages
+     * of the current receive, only used by the polling thread.
+     */
+    private int reservedWorkers;
 
     /**
      * @param sqs
@@ -57,15 +117,56 @@ public class SqsListenerImpl implements SqsListener {
      */
     @Inject
     public SqsListenerImpl(AmazonSQS sqs, @Named("sqsListenQueueUrl") String sqsListenQueueUrl, Set<MessageHandler> handlers) {
+        this(sqs, sqsListenQueueUrl, handlers, 0);
+    }
+
+    /**
+     * @param sqs
+     *            Managed {@link AmazonSQS} instance that this listener will use
+     *            to connect to its queue.
+     * @param sqsListenQueueUrl
+     *            URL of the queue where this instance will listen to.
+     * @param handlers
+     *            All handlers will be called for every message that this
+     *            instance receives.
+     * @param workerThreads
+     *            Number of threads that handle messages concurrently, no more
+     *            messages are received while all workers are busy. Use 0 to
+     *            handle one message per receive on the polling thread, in
+     *            which case the maxConcurrency of {@link MessageLimits} has no
+     *            effect.
+     */
+    public SqsListenerImpl(AmazonSQS sqs, String sqsListenQueueUrl, Set<MessageHandler> handlers, int workerThreads) {
         this.sqs = sqs;
         this.sqsListenQueueUrl = sqsListenQueueUrl;
         this.handlers = handlers;
+        this.workerThreads = workerThreads;
+        this.queueAttributes = new QueueAttributesCache(sqs, QueueAttributesCache.DEFAULT_TTL);
+
+        for (MessageHandler handler : handlers) {
+            MessageLimits limits = handler.getLimits();
+            if (limits != null) {
+                throttles.put(handler, new MessageThrottle(limits));
+                if (limits.getMaxConcurrency() > 0 && workerThreads <= 0) {
+                    LOG.warn(String.format("Handler %s declares maxConcurrency %s, but the listener for queue '%s' has no "
+                            + "worker threads, messages are handled one at a time", handler, limits.getMaxConcurrency(),
+                            sqsListenQueueUrl));
+                }
+            }
+        }
 
         interruptedMsg = "Stop listening to queue: " + sqsListenQueueUrl;
     }
 
     @Override
     public void start() throws Exception {
+        if (workerThreads > 0) {
+            // The queue never holds more than the idle workers that were reserved.
+            workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            idleWorkers = new Semaphore(workerThreads);
+        }
+
         pollingThread = new Thread() {
 
             @Override
@@ -74,37 +175,15 @@ public class SqsListenerImpl implements SqsListener {
                 LOG.info("Start listening to queue: " + sqsListenQueueUrl);
                 while (!isInterrupted()) {
                     try {
-                        ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sqsListenQueueUrl)
-                                .withMessageAttributeNames(ATTR_ALL);
-                        List<Message> messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
-                        for (int i = 0; i < messages.size(); i++) {
-                            Message msg = messages.get(i);
-                            LOG.debug(String.format("Processing message %s of %s...", i + 1, messages.size()));
-                            try {
-                                for (MessageHandler handler : handlers) {
-                                    LOG.debug("Calling message handler: " + handler);
-                                    if (handler.canHandle(msg)) {
-                                        LOG.debug("Message accepted.");
-                                        handler.handle(msg);
-                                        String messageRecieptHandle = msg.getReceiptHandle();
-                                        sqs.deleteMessage(new DeleteMessageRequest(sqsListenQueueUrl, messageRecieptHandle));
-                                        LOG.debug(String.format("Message %s of %s is processed and deleted from queue '%s'", i + 1,
-                                                messages.size(), sqsListenQueueUrl));
-                                    } else {
-                                        LOG.debug("Message refused.");
-                                    }
-                                }
-
-                            } catch (Exception e) {
-                                logProcessingError(msg, e);
-                            }
-
-                        }
+                        poll();
+                        errorLogger.emitSummaryIfDue();
 
                         boolean recovered = healthy.compareAndSet(false, true);
                         if (recovered) {
                             LOG.info(String.format("Queue '%s' recovered from error condition", sqsListenQueueUrl));
                         }
+                    } catch (InterruptedException e) {
+                        break;
                     } catch (Exception e) {
                         handleQueueError(e);
                     }
@@ -115,16 +194,215 @@ public class SqsListenerImpl implements SqsListener {
         pollingThread.start();
     }
 
-    private void logProcessingError(Message msg, Exception e) {
-        StringBuilder builder = new StringBuilder().append("An error occurred while processing the following message:")
-                .append("\n\tMessageId:     ").append(msg.getMessageId()).append("\n\tReceiptHandle: ")
-                .append(msg.getReceiptHandle()).append("\n\tMD5OfBody:     ").append(msg.getMD5OfBody())
-                .append("\n\tBody:          ").append(msg.getBody());
+    /**
+     * Receives a batch of messages and dispatches it, called repeatedly by the
+     * polling thread.
+     */
+    void poll() throws InterruptedException {
+        if (!hasWorkers()) {
+            process(sqsListenQueueUrl, receive(sqsListenQueueUrl, null, null));
+            return;
+        }
 
-        for (Entry<String, MessageAttributeValue> entry : msg.getMessageAttributes().entrySet()) {
-            builder.append("\n\tAttribute" + "\n\t\tName:  " + entry.getKey() + "\n\t\tValue: " + entry.getValue());
+        awaitIdleWorker();
+        try {
+            process(sqsListenQueueUrl, receive(sqsListenQueueUrl, null, reserveWorkers(0)));
+        } finally {
+            releaseWorkers();
+        }
+    }
+
+    /**
+     * @param queueUrl
+     *            The queue to receive from.
+     * @param waitTimeSeconds
+     *            Long polling wait time, or null for the queue's default.
+     * @param maxMessages
+     *            Maximum number of messages, or null for the SQS default of
+     *            one message.
+     * @return The received messages, possibly empty.
+     */
+    List<Message> receive(String queueUrl, Integer waitTimeSeconds, Integer maxMessages) {
+        ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
+                .withMessageAttributeNames(ATTR_ALL).withAttributeNames(SqsListenerMetrics.ATTR_SENT_TIMESTAMP)
+                .withMaxNumberOfMessages(maxMessages).withWaitTimeSeconds(waitTimeSeconds);
+        return sqs.receiveMessage(receiveMessageRequest).getMessages();
+    }
+
+    /**
+     * @return True when messages are handled by worker threads, false when
+     *         they are handled on the polling thread.
+     */
+    boolean hasWorkers() {
+        return workerThreads > 0;
+    }
+
+    /**
+     * @return The number of idle workers that are not reserved.
+     */
+    int getIdleWorkerCount() {
+        return idleWorkers.availablePermits();
+    }
+
+    /**
+     * Blocks until at least one worker is idle.
+     */
+    void awaitIdleWorker() throws InterruptedException {
+        idleWorkers.acquire();
+        idleWorkers.release();
+    }
+
+    /**
+     * Reserves idle workers for the messages of the next receive, every
+     * dispatched message takes one reserved worker.
+     *
+     * @param keepIdle
+     *            Number of idle workers that must not be reserved.
+     * @return The total number of reserved workers, at most the maximum
+     *         number of messages per receive.
+     */
+    int reserveWorkers(int keepIdle) {
+        while (reservedWorkers < MAX_MESSAGES && idleWorkers.availablePermits() > keepIdle && idleWorkers.tryAcquire()) {
+            reservedWorkers++;
+        }
+        return reservedWorkers;
+    }
+
+    /**
+     * Returns the reserved workers that were not used by dispatched messages.
+     */
+    void releaseWorkers() {
+        idleWorkers.release(reservedWorkers);
+        reservedWorkers = 0;
+    }
+
+    /**
+     * Dispatches messages that were received from the supplied queue and
+     * pauses in proportion to the share of deferred messages.
+     */
+    void process(String queueUrl, List<Message> messages) {
+        metrics.onReceive(queueUrl, messages);
+        int deferred = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message msg = messages.get(i);
+            LOG.debug(String.format("Processing message %s of %s...", i + 1, messages.size()));
+            try {
+                if (!dispatch(queueUrl, msg)) {
+                    deferred++;
+                }
+            } catch (Exception e) {
+                errorLogger.log(queueUrl, msg, e);
+            }
+        }
+
+        if (deferred > 0) {
+            backOff(queueUrl, MAX_SLEEP_ON_THROTTLE * deferred / messages.size());
+        }
+    }
+
+    /**
+     * Hands the message to a reserved worker when the throttles of all
+     * accepting handlers permit it, defers the message otherwise.
+     *
+     * @return False when the message was deferred, true otherwise.
+     */
+    private boolean dispatch(final String queueUrl, final Message msg) {
+        final List<MessageHandler> accepted = new ArrayList<>();
+        for (MessageHandler handler : handlers) {
+            LOG.debug("Calling message handler: " + handler);
+            if (handler.canHandle(msg)) {
+                LOG.debug("Message accepted.");
+                accepted.add(handler);
+            } else {
+                LOG.debug("Message refused.");
+            }
+        }
+
+        final List<MessageThrottle> acquired = new ArrayList<>();
+        for (MessageHandler handler : accepted) {
+            MessageThrottle throttle = throttles.get(handler);
+            if (throttle == null) {
+                continue;
+            }
+            if (!throttle.tryAcquire()) {
+                release(acquired);
+                defer(queueUrl, msg, throttle.getDeferSeconds());
+                return false;
+            }
+            acquired.add(throttle);
+        }
+
+        if (accepted.isEmpty()) {
+            return true;
+        }
+
+        Executor executor = CALLER_RUNS;
+        final Semaphore worker = workers != null ? idleWorkers : null;
+        if (worker != null) {
+            executor = workers;
+            reservedWorkers--;
+        }
+        metrics.onDispatch();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    handle(queueUrl, msg, accepted);
+                } finally {
+                    release(acquired);
+                    metrics.onCompleted();
+                    if (worker != null) {
+                        worker.release();
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    private void handle(String queueUrl, Message msg, List<MessageHandler> accepted) {
+        try {
+            for (MessageHandler handler : accepted) {
+                handler.handle(msg);
+                String messageRecieptHandle = msg.getReceiptHandle();
+                sqs.deleteMessage(new DeleteMessageRequest(queueUrl, messageRecieptHandle));
+                LOG.debug(String.format("Message '%s' is processed and deleted from queue '%s'", msg.getMessageId(),
+                        queueUrl));
+            }
+            metrics.onProcessed();
+        } catch (Exception e) {
+            errorLogger.log(queueUrl, msg, e);
+        }
+    }
+
+    private void release(List<MessageThrottle> acquired) {
+        for (MessageThrottle throttle : acquired) {
+            throttle.release();
+        }
+    }
+
+    /**
+     * Makes the message visible again after the supplied delay. This
+     * increases the receive count of the message, see the class comment.
+     */
+    private void defer(String queueUrl, Message msg, int deferSeconds) {
+        LOG.debug(String.format("Message '%s' is deferred for %s seconds", msg.getMessageId(), deferSeconds));
+        try {
+            sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, msg.getReceiptHandle(), deferSeconds));
+        } catch (Exception e) {
+            LOG.warn(String.format("Could not defer message '%s' on queue '%s'", msg.getMessageId(), queueUrl), e);
+        }
+    }
+
+    private void backOff(String queueUrl, int sleep) {
+        LOG.debug(String.format("Messages from queue '%s' were deferred, waiting '%s' ms before receiving again",
+                queueUrl, sleep));
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
         }
-        LOG.error(builder.toString(), e);
     }
 
     private void handleQueueError(Exception e) {
@@ -145,6 +423,10 @@ public class SqsListenerImpl implements SqsListener {
     @Override
     public void stop() throws Exception {
         pollingThread.interrupt();
+        if (workers != null) {
+            workers.shutdown();
+            workers.awaitTermination(WORKER_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
     @Override
@@ -157,4 +439,42 @@ public class SqsListenerImpl implements SqsListener {
         return sqsListenQueueUrl;
     }
 
+    /**
+     * @return The logger of message processing errors, e.g. to switch on the
+     *         full message dump.
+     */
+    public ProcessingErrorLogger getErrorLogger() {
+        return errorLogger;
+    }
+
+    @Override
+    public SqsListenerStatus getStatus() {
+        return getStatus(true);
+    }
+
+    @Override
+    public SqsListenerStatus getStatus(boolean includeQueueAttributes) {
+        QueueAttributes attributes = null;
+        if (includeQueueAttributes) {
+            try {
+                attributes = getQueueAttributes();
+            } catch (Exception e) {
+                LOG.debug(String.format("The attributes of queue '%s' are unavailable: %s", sqsListenQueueUrl, e));
+            }
+        }
+        return metrics.toStatus(sqsListenQueueUrl, healthy.get(), attributes);
+    }
+
+    /**
+     * @return The cached attributes of the queue(s) that this listener
+     *         receives from.
+     */
+    QueueAttributes getQueueAttributes() {
+        return getQueueAttributes(sqsListenQueueUrl);
+    }
+
+    QueueAttributes getQueueAttributes(String queueUrl) {
+        return queueAttributes.get(queueUrl);
+    }
+
 }
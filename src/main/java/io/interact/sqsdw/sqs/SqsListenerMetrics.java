@@ -0,0 +1,105 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.codahale.metrics.Meter;
+
+/**
+ * Keeps track of the receive and processing activity of a listener, used to
+ * build its {@link SqsListenerStatus}. Custom
+ * {@link StatusReportingSqsListener} implementations can use it as well.
+ */
+public class SqsListenerMetrics {
+
+    /**
+     * SQS message system attribute that holds the send time in milliseconds.
+     */
+    public static final String ATTR_SENT_TIMESTAMP = "SentTimestamp";
+
+    private final Meter processed = new Meter();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ConcurrentMap<String, Long> oldestMessageAges = new ConcurrentHashMap<>();
+
+    private volatile long lastReceive = SqsListenerStatus.UNKNOWN;
+
+    private QueueAttributes lastAttributes;
+    private long lastProcessedCount;
+    private double arrivalRate;
+
+    /**
+     * Records a successful receive and the age of the oldest message in the
+     * batch, which approximates the age of the oldest message on the queue.
+     * Ages are kept per queue, so an empty receive from one queue doesn't hide
+     * old messages on another.
+     */
+    public void onReceive(String queueUrl, List<Message> messages) {
+        long now = System.currentTimeMillis();
+        long oldestSent = now;
+        for (Message msg : messages) {
+            String sent = msg.getAttributes() != null ? msg.getAttributes().get(ATTR_SENT_TIMESTAMP) : null;
+            if (sent != null) {
+                oldestSent = Math.min(oldestSent, Long.parseLong(sent));
+            }
+        }
+        oldestMessageAges.put(queueUrl, now - oldestSent);
+        lastReceive = now;
+    }
+
+    public void onDispatch() {
+        inFlight.incrementAndGet();
+    }
+
+    public void onProcessed() {
+        processed.mark();
+    }
+
+    public void onCompleted() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Derives the arrival rate from the change in queue size and the number
+     * of processed messages since the previous attributes.
+     */
+    public synchronized double updateArrivalRate(QueueAttributes attributes) {
+        if (lastAttributes == null || attributes.getFetchedAt() > lastAttributes.getFetchedAt()) {
+            long processedCount = processed.getCount();
+            if (lastAttributes != null) {
+                double seconds = (attributes.getFetchedAt() - lastAttributes.getFetchedAt()) / 1000.0;
+                long arrived = attributes.getTotalMessages() - lastAttributes.getTotalMessages() + processedCount
+                        - lastProcessedCount;
+                arrivalRate = Math.max(0, arrived / seconds);
+            }
+            lastAttributes = attributes;
+            lastProcessedCount = processedCount;
+        }
+        return arrivalRate;
+    }
+
+    public SqsListenerStatus toStatus(String queueUrl, boolean healthy, QueueAttributes attributes) {
+        long queueDepth = SqsListenerStatus.UNKNOWN;
+        double arrivals = 0;
+        if (attributes != null) {
+            queueDepth = attributes.getVisibleMessages();
+            arrivals = updateArrivalRate(attributes);
+        }
+
+        long received = lastReceive;
+        long sinceLastReceive = received == SqsListenerStatus.UNKNOWN ? SqsListenerStatus.UNKNOWN : TimeUnit.MILLISECONDS
+                .toSeconds(System.currentTimeMillis() - received);
+
+        long oldestMessageAge = 0;
+        for (long age : oldestMessageAges.values()) {
+            oldestMessageAge = Math.max(oldestMessageAge, age);
+        }
+
+        return new SqsListenerStatus(queueUrl, healthy, queueDepth, TimeUnit.MILLISECONDS.toSeconds(oldestMessageAge),
+                sinceLastReceive, processed.getOneMinuteRate(), arrivals, inFlight.get());
+    }
+}
@@ -0,0 +1,103 @@
+package io.interact.sqsdw.sqs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Point in time view of how well an {@link SqsListener} keeps up with its
+ * queue.
+ *
+ * @see SqsListenerHealthThresholds
+ */
+public class SqsListenerStatus {
+
+    /**
+     * Value of counts and ages that could not be determined.
+     */
+    public static final long UNKNOWN = -1;
+
+    @JsonProperty
+    private final String queueUrl;
+
+    @JsonProperty
+    private final boolean healthy;
+
+    @JsonProperty
+    private final long queueDepth;
+
+    @JsonProperty
+    private final long oldestMessageAgeSeconds;
+
+    @JsonProperty
+    private final long secondsSinceLastReceive;
+
+    @JsonProperty
+    private final double processingRate;
+
+    @JsonProperty
+    private final double arrivalRate;
+
+    @JsonProperty
+    private final int inFlight;
+
+    /**
+     * @param queueUrl
+     *            The SQS queue URL.
+     * @param healthy
+     *            False when the last attempt to receive messages failed.
+     * @param queueDepth
+     *            Approximate number of messages waiting on the queue.
+     * @param oldestMessageAgeSeconds
+     *            Age of the oldest message in the last received batch.
+     * @param secondsSinceLastReceive
+     *            Time since messages were last received successfully.
+     * @param processingRate
+     *            Messages processed per second.
+     * @param arrivalRate
+     *            Messages that arrived on the queue per second.
+     * @param inFlight
+     *            Number of messages being handled by this listener.
+     */
+    public SqsListenerStatus(String queueUrl, boolean healthy, long queueDepth, long oldestMessageAgeSeconds,
+            long secondsSinceLastReceive, double processingRate, double arrivalRate, int inFlight) {
+        this.queueUrl = queueUrl;
+        this.healthy = healthy;
+        this.queueDepth = queueDepth;
+        this.oldestMessageAgeSeconds = oldestMessageAgeSeconds;
+        this.secondsSinceLastReceive = secondsSinceLastReceive;
+        this.processingRate = processingRate;
+        this.arrivalRate = arrivalRate;
+        this.inFlight = inFlight;
+    }
+
+    public String getQueueUrl() {
+        return queueUrl;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getOldestMessageAgeSeconds() {
+        return oldestMessageAgeSeconds;
+    }
+
+    public long getSecondsSinceLastReceive() {
+        return secondsSinceLastReceive;
+    }
+
+    public double getProcessingRate() {
+        return processingRate;
+    }
+
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,67 @@
+package io.interact.sqsdw.sqs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.jackson.Jackson;
+
+/**
+ * Admin servlet that reports the {@link SqsListenerStatus} of listeners as
+ * JSON, register it with the admin environment:
+ *
+ * <pre>
+ * env.admin().addServlet("sqs-listeners", new SqsListenerStatusServlet(listeners, thresholds)).addMapping("/sqs-listeners");
+ * </pre>
+ */
+public class SqsListenerStatusServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    private final transient ObjectMapper mapper = Jackson.newObjectMapper();
+    private final transient List<? extends StatusReportingSqsListener> listeners;
+    private final transient SqsListenerHealthThresholds thresholds;
+
+    public SqsListenerStatusServlet(List<? extends StatusReportingSqsListener> listeners,
+            SqsListenerHealthThresholds thresholds) {
+        this.listeners = listeners;
+        this.thresholds = thresholds;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (StatusReportingSqsListener listener : listeners) {
+            SqsListenerStatus status = listener.getStatus();
+            List<String> violations = thresholds.findViolations(status);
+
+            String state = "HEALTHY";
+            if (!status.isHealthy()) {
+                state = "UNHEALTHY";
+            } else if (!violations.isEmpty()) {
+                state = SqsListenerHealthCheck.DEGRADED;
+            }
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("state", state);
+            entry.put("violations", violations);
+            entry.put("status", status);
+            report.add(entry);
+        }
+
+        resp.setContentType(CONTENT_TYPE);
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resp.getWriter(), report);
+    }
+}
@@ -0,0 +1,31 @@
+package io.interact.sqsdw.sqs;
+
+/**
+ * {@link SqsListener} that reports how well it keeps up with its queue, used
+ * by the {@link SqsListenerHealthCheck} thresholds and the
+ * {@link SqsListenerStatusServlet}.
+ *
+ * @see SqsListenerMetrics
+ */
+public interface StatusReportingSqsListener extends SqsListener {
+
+    /**
+     * Reports how well this listener keeps up with its queue. Queue attributes
+     * are cached, so this method can be called frequently.
+     * 
+     * @return The current status of this listener.
+     */
+    SqsListenerStatus getStatus();
+
+    /**
+     * Reports how well this listener keeps up with its queue, optionally
+     * without the queue depth and arrival rate, which require the attributes
+     * of the queue.
+     * 
+     * @param includeQueueAttributes
+     *            False to skip the queue attribute lookup, the queue depth and
+     *            arrival rate are unknown in that case.
+     * @return The current status of this listener.
+     */
+    SqsListenerStatus getStatus(boolean includeQueueAttributes);
+}
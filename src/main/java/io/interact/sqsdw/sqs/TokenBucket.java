@@ -0,0 +1,56 @@
+package io.interact.sqsdw.sqs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking token bucket rate limiter. The bucket starts full and is
+ * refilled continuously at the configured rate.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond
+     *            Rate at which the bucket is refilled.
+     * @param capacity
+     *            Maximum number of tokens in the bucket, i.e. the burst size.
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Rate must be positive and capacity at least 1!");
+        }
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token from the bucket when one is available, never blocks.
+     *
+     * @return True when a token was taken, false when the rate is exceeded.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
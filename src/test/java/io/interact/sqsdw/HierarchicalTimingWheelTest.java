@@ -0,0 +1,76 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import io.interact.sqsdw.sqs.HierarchicalTimingWheel;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests expiry and cascading of the {@link HierarchicalTimingWheel}.
+ */
+public class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 1000;
+
+    private static final long START = 1234567 * TICK;
+
+    private HierarchicalTimingWheel<String> fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new HierarchicalTimingWheel<>(TICK, START);
+    }
+
+    @Test
+    public void testNearDeadline() {
+        fixture.add(START + 5 * TICK, "near");
+
+        assertTrue(fixture.advance(START + 5 * TICK - 1).isEmpty());
+        assertEquals("near", fixture.advance(START + 5 * TICK).get(0));
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void testNeverEarly() {
+        fixture.add(START + 5 * TICK + 1, "rounded");
+
+        assertTrue(fixture.advance(START + 5 * TICK).isEmpty());
+        assertEquals(1, fixture.advance(START + 6 * TICK).size());
+    }
+
+    @Test
+    public void testPastDeadline() {
+        fixture.add(START - 10 * TICK, "late");
+
+        assertEquals("late", fixture.advance(START).get(0));
+    }
+
+    @Test
+    public void testCascadesFarDeadlines() {
+        long[] deadlines = { 63, 64, 65, 4095, 4096, 100000, 300000 };
+        for (long deadline : deadlines) {
+            fixture.add(START + deadline * TICK, String.valueOf(deadline));
+        }
+
+        for (long deadline : deadlines) {
+            assertTrue(fixture.advance(START + (deadline - 1) * TICK).isEmpty());
+            List<String> expired = fixture.advance(START + deadline * TICK);
+            assertEquals(1, expired.size());
+            assertEquals(String.valueOf(deadline), expired.get(0));
+        }
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void testAddAfterIdle() {
+        fixture.advance(START + 100 * TICK);
+        fixture.add(START + 200 * TICK, "later");
+
+        assertTrue(fixture.advance(START + 199 * TICK).isEmpty());
+        assertEquals(1, fixture.advance(START + 200 * TICK).size());
+    }
+}
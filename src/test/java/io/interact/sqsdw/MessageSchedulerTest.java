@@ -0,0 +1,220 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import io.interact.sqsdw.sqs.MessageHandler;
+import io.interact.sqsdw.sqs.MessageScheduler;
+import io.interact.sqsdw.sqs.ScheduledMessage;
+import io.interact.sqsdw.sqs.ScheduledMessageStore;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+/**
+ * Tests that the {@link MessageScheduler} holds far future messages, sends
+ * near messages with the remaining delay and retries failed sends.
+ */
+public class MessageSchedulerTest {
+
+    private static final int WAIT = 1500;
+
+    private static final int RETRY_WAIT = 4000;
+
+    private static final int BACKOFF_WAIT = 6500;
+
+    private static final Answer<SendMessageBatchResult> SUCCEED = new Answer<SendMessageBatchResult>() {
+
+        @Override
+        public SendMessageBatchResult answer(InvocationOnMock invocation) throws Throwable {
+            SendMessageBatchRequest request = (SendMessageBatchRequest) invocation.getArguments()[0];
+            SendMessageBatchResult result = new SendMessageBatchResult();
+            for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()));
+            }
+            return result;
+        }
+    };
+
+    private static final String TEST_QUEUE_URL = "test-queue-url";
+
+    private static final String TEST_TYPE = "TestType";
+
+    @Mock
+    private AmazonSQS sqs;
+
+    @Mock
+    private ScheduledMessageStore store;
+
+    private MessageScheduler fixture;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        fixture = new MessageScheduler(sqs, store);
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        long now = System.currentTimeMillis();
+        String nearId = fixture.schedule("near", TEST_QUEUE_URL, TEST_TYPE, new Date(now + TimeUnit.MINUTES.toMillis(5)));
+        fixture.schedule("far", TEST_QUEUE_URL, TEST_TYPE, new Date(now + TimeUnit.DAYS.toMillis(3)));
+        verify(store, times(2)).save(any(ScheduledMessage.class));
+
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                new SendMessageBatchResult().withSuccessful(new SendMessageBatchResultEntry().withId(nearId)));
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(1)).sendMessageBatch(captor.capture());
+        verify(store, times(1)).delete(nearId);
+
+        SendMessageBatchRequestEntry entry = captor.getValue().getEntries().get(0);
+        assertEquals(1, captor.getValue().getEntries().size());
+        assertEquals("near", entry.getMessageBody());
+        assertEquals(TEST_TYPE, entry.getMessageAttributes().get(MessageHandler.ATTR_MESSAGE_TYPE).getStringValue());
+        assertTrue(entry.getDelaySeconds() > 290 && entry.getDelaySeconds() <= 300);
+        assertEquals(1, fixture.getPendingCount());
+    }
+
+    @Test
+    public void testRetriesRequestFailures() throws Exception {
+        String id = fixture.schedule("near", TEST_QUEUE_URL, TEST_TYPE, near());
+        AmazonServiceException throttled = new AmazonServiceException("Rate exceeded");
+        throttled.setErrorType(ErrorType.Client);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(throttled).thenAnswer(SUCCEED);
+
+        fixture.start();
+        Thread.sleep(RETRY_WAIT);
+        fixture.stop();
+
+        verify(sqs, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(store, times(1)).delete(id);
+        assertEquals(0, fixture.getPendingCount());
+    }
+
+    @Test
+    public void testBacksOffOnRequestFailures() throws Exception {
+        fixture.schedule("near", TEST_QUEUE_URL, TEST_TYPE, near());
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(
+                new AmazonServiceException("Service unavailable"));
+
+        fixture.start();
+        Thread.sleep(BACKOFF_WAIT);
+        fixture.stop();
+
+        // Retries after 1, 2 and 4 seconds instead of every second.
+        verify(sqs, atLeast(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(sqs, atMost(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertEquals(1, fixture.getPendingCount());
+    }
+
+    @Test
+    public void testDropsOnlySenderFaults() throws Exception {
+        String refusedId = fixture.schedule("refused", TEST_QUEUE_URL, TEST_TYPE, near());
+        String failedId = fixture.schedule("failed", TEST_QUEUE_URL, TEST_TYPE, near());
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                new SendMessageBatchResult().withFailed(new BatchResultErrorEntry().withId(refusedId).withSenderFault(true),
+                        new BatchResultErrorEntry().withId(failedId).withSenderFault(false))).thenAnswer(SUCCEED);
+
+        fixture.start();
+        Thread.sleep(RETRY_WAIT);
+        fixture.stop();
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(2)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().getEntries().size());
+        assertEquals(failedId, captor.getValue().getEntries().get(0).getId());
+        verify(store, times(1)).delete(refusedId);
+        verify(store, times(1)).delete(failedId);
+        assertEquals(0, fixture.getPendingCount());
+    }
+
+    @Test
+    public void testStoreFailureDoesNotStopSending() throws Exception {
+        String firstId = fixture.schedule("first", TEST_QUEUE_URL, TEST_TYPE, near());
+        String secondId = fixture.schedule("second", TEST_QUEUE_URL, TEST_TYPE, near());
+        doThrow(new IllegalStateException("store unavailable")).when(store).delete(firstId);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(SUCCEED);
+
+        fixture.start();
+        Thread.sleep(RETRY_WAIT);
+        fixture.stop();
+
+        verify(sqs, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(store, times(1)).delete(secondId);
+        assertEquals(0, fixture.getPendingCount());
+    }
+
+    @Test
+    public void testSplitsBatchesBySize() throws Exception {
+        String body = StringUtils.repeat("x", 100 * 1024);
+        for (int i = 0; i < 3; i++) {
+            fixture.schedule(body, TEST_QUEUE_URL, TEST_TYPE, near());
+        }
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(SUCCEED);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(2)).sendMessageBatch(captor.capture());
+        assertEquals(2, captor.getAllValues().get(0).getEntries().size());
+        assertEquals(1, captor.getAllValues().get(1).getEntries().size());
+    }
+
+    @Test
+    public void testScheduleBeforeStartIsNotDuplicated() throws Exception {
+        fixture.schedule("near", TEST_QUEUE_URL, TEST_TYPE, near());
+        ArgumentCaptor<ScheduledMessage> saved = ArgumentCaptor.forClass(ScheduledMessage.class);
+        verify(store).save(saved.capture());
+        when(store.loadAll()).thenReturn(Collections.singletonList(saved.getValue()));
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(SUCCEED);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().getEntries().size());
+    }
+
+    @Test
+    public void testStopWithoutStart() throws Exception {
+        fixture.stop();
+    }
+
+    private static Date near() {
+        return new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
+    }
+}
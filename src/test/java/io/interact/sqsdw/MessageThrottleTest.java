@@ -0,0 +1,92 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.interact.sqsdw.sqs.MessageLimits;
+import io.interact.sqsdw.sqs.MessageThrottle;
+import io.interact.sqsdw.sqs.TokenBucket;
+import org.junit.Test;
+
+/**
+ * Tests the rate limit and bulkhead of the {@link MessageThrottle} and its
+ * {@link TokenBucket}.
+ */
+public class MessageThrottleTest {
+
+    private static final double SLOW_RATE = 0.001;
+
+    @Test
+    public void testTokenBucketConstructor() {
+        try {
+            new TokenBucket(0, 1);
+            fail("Constructor should not have accepted a zero rate");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTokenBucketBurst() {
+        TokenBucket fixture = new TokenBucket(SLOW_RATE, 2);
+
+        assertTrue(fixture.tryAcquire());
+        assertTrue(fixture.tryAcquire());
+        assertFalse(fixture.tryAcquire());
+    }
+
+    @Test
+    public void testUnlimited() {
+        MessageThrottle fixture = new MessageThrottle(new MessageLimits());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(fixture.tryAcquire());
+        }
+    }
+
+    @Test
+    public void testRateLimit() {
+        MessageLimits limits = new MessageLimits(SLOW_RATE, 0);
+        limits.setBurst(3);
+        MessageThrottle fixture = new MessageThrottle(limits);
+
+        assertTrue(fixture.tryAcquire());
+        assertTrue(fixture.tryAcquire());
+        assertTrue(fixture.tryAcquire());
+        assertFalse(fixture.tryAcquire());
+    }
+
+    @Test
+    public void testBulkhead() {
+        MessageThrottle fixture = new MessageThrottle(new MessageLimits(0, 2));
+
+        assertTrue(fixture.tryAcquire());
+        assertTrue(fixture.tryAcquire());
+        assertFalse(fixture.tryAcquire());
+
+        fixture.release();
+        assertTrue(fixture.tryAcquire());
+    }
+
+    @Test
+    public void testFullBulkheadDoesNotConsumeTokens() {
+        MessageLimits limits = new MessageLimits(SLOW_RATE, 1);
+        limits.setBurst(2);
+        MessageThrottle fixture = new MessageThrottle(limits);
+
+        assertTrue(fixture.tryAcquire());
+        assertFalse(fixture.tryAcquire());
+
+        fixture.release();
+        assertTrue(fixture.tryAcquire());
+    }
+
+    @Test
+    public void testDefaultDeferSeconds() {
+        MessageThrottle fixture = new MessageThrottle(new MessageLimits(1, 1));
+
+        assertEquals(MessageLimits.DEFAULT_DEFER_SECONDS, fixture.getDeferSeconds());
+    }
+}
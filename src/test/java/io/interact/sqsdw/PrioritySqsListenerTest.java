@@ -0,0 +1,167 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.interact.sqsdw.sqs.MessageHandler;
+import io.interact.sqsdw.sqs.PrioritySqsListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+/**
+ * Tests {@link PrioritySqsListener} tier ordering, anti-starvation and
+ * reserved workers.
+ */
+public class PrioritySqsListenerTest {
+
+    private static final int WAIT = 500;
+
+    private static final int LONG_POLL = 50;
+
+    private static final String HIGH_QUEUE_URL = "high-queue-url";
+
+    private static final String LOW_QUEUE_URL = "low-queue-url";
+
+    @Mock
+    private AmazonSQS sqs;
+
+    @Mock
+    private MessageHandler handler;
+
+    private Set<MessageHandler> handlers;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        handlers = new HashSet<>();
+        handlers.add(handler);
+
+        when(handler.canHandle(any(Message.class))).thenReturn(true);
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+
+            @Override
+            public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+                ReceiveMessageRequest request = (ReceiveMessageRequest) invocation.getArguments()[0];
+                List<Message> messages = new ArrayList<>();
+                messages.add(new Message().withReceiptHandle(request.getQueueUrl()));
+                return new ReceiveMessageResult().withMessages(messages);
+            }
+        });
+    }
+
+    @Test
+    public void testDrainsHighPriorityFirst() throws Exception {
+        PrioritySqsListener fixture = new PrioritySqsListener(sqs, Arrays.asList(HIGH_QUEUE_URL, LOW_QUEUE_URL), handlers,
+                0, TimeUnit.HOURS.toMillis(1));
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        verify(sqs, atLeastOnce()).deleteMessage(new DeleteMessageRequest(HIGH_QUEUE_URL, HIGH_QUEUE_URL));
+        verify(sqs, never()).deleteMessage(new DeleteMessageRequest(LOW_QUEUE_URL, LOW_QUEUE_URL));
+    }
+
+    @Test
+    public void testPollsStarvedLowPriority() throws Exception {
+        PrioritySqsListener fixture = new PrioritySqsListener(sqs, Arrays.asList(HIGH_QUEUE_URL, LOW_QUEUE_URL), handlers,
+                0, 50);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        verify(sqs, atLeastOnce()).deleteMessage(new DeleteMessageRequest(HIGH_QUEUE_URL, HIGH_QUEUE_URL));
+        verify(sqs, atLeastOnce()).deleteMessage(new DeleteMessageRequest(LOW_QUEUE_URL, LOW_QUEUE_URL));
+    }
+
+    @Test
+    public void testReservesWorkersForHighPriority() throws Exception {
+        final AtomicBoolean urgent = new AtomicBoolean();
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new Answer<ReceiveMessageResult>() {
+
+            @Override
+            public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+                ReceiveMessageRequest request = (ReceiveMessageRequest) invocation.getArguments()[0];
+                List<Message> messages = new ArrayList<>();
+                if (!HIGH_QUEUE_URL.equals(request.getQueueUrl()) || urgent.get()) {
+                    for (int i = 0; i < request.getMaxNumberOfMessages(); i++) {
+                        messages.add(new Message().withReceiptHandle(request.getQueueUrl()));
+                    }
+                } else if (request.getWaitTimeSeconds() > 0) {
+                    // Long poll of an empty queue.
+                    Thread.sleep(LONG_POLL);
+                }
+                return new ReceiveMessageResult().withMessages(messages);
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger bulk = new AtomicInteger();
+        Set<MessageHandler> blockingHandlers = new HashSet<>();
+        blockingHandlers.add(new MessageHandler("Any") {
+
+            @Override
+            public boolean canHandle(Message message) {
+                return true;
+            }
+
+            @Override
+            public void handle(Message message) {
+                if (LOW_QUEUE_URL.equals(message.getReceiptHandle())) {
+                    bulk.incrementAndGet();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        PrioritySqsListener fixture = new PrioritySqsListener(sqs, Arrays.asList(HIGH_QUEUE_URL, LOW_QUEUE_URL),
+                blockingHandlers, 2, TimeUnit.HOURS.toMillis(1), 1);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        urgent.set(true);
+        Thread.sleep(WAIT);
+
+        verify(sqs, atLeastOnce()).deleteMessage(new DeleteMessageRequest(HIGH_QUEUE_URL, HIGH_QUEUE_URL));
+        assertEquals(1, bulk.get());
+
+        latch.countDown();
+        fixture.stop();
+
+        verify(sqs, never()).changeMessageVisibility(any(ChangeMessageVisibilityRequest.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresQueueUrls() {
+        new PrioritySqsListener(sqs, new ArrayList<String>(), handlers, 0);
+    }
+}
@@ -0,0 +1,148 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.interact.sqsdw.sqs.MessageHandler;
+import io.interact.sqsdw.sqs.ProcessingErrorLogger;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Tests sampling, truncation and summaries of the {@link ProcessingErrorLogger}.
+ */
+public class ProcessingErrorLoggerTest {
+
+    private static final String TEST_QUEUE_URL = "test-queue-url";
+
+    private static final String TEST_TYPE = "TestType";
+
+    private static final int MAX_BODY_LENGTH = 16;
+
+    private static final double SLOW_RATE = 0.001;
+
+    @Mock
+    private Logger log;
+
+    private Message message;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+        messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE, new MessageAttributeValue().withDataType("String")
+                .withStringValue(TEST_TYPE));
+        message = new Message().withMessageId("id").withBody(StringUtils.repeat("x", 1000) + "\nsecret")
+                .withMessageAttributes(messageAttributes);
+    }
+
+    @Test
+    public void testSampledAndTruncated() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, Long.MAX_VALUE);
+        RuntimeException e = new RuntimeException("failed");
+
+        for (int i = 0; i < 100; i++) {
+            fixture.log(TEST_QUEUE_URL, message, e);
+        }
+
+        verify(log, times(1)).error(anyString(), eq(e));
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(log, times(4)).error(captor.capture());
+        String event = captor.getValue();
+        assertTrue(event.contains("messageType=" + TEST_TYPE));
+        assertTrue(event.contains("bodyLength=1007"));
+        assertFalse(event.contains("secret"));
+        assertFalse(event.contains("\n"));
+        verify(log, never()).warn(anyString());
+    }
+
+    @Test
+    public void testSampledPerExceptionClass() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            fixture.log(TEST_QUEUE_URL, message, new IllegalStateException());
+            fixture.log(TEST_QUEUE_URL, message, new IllegalArgumentException());
+        }
+
+        verify(log, times(2)).error(anyString(), any(Throwable.class));
+        verify(log, times(8)).error(anyString());
+    }
+
+    @Test
+    public void testSampledCaseInsensitive() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, Long.MAX_VALUE);
+        Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+        messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE, new MessageAttributeValue().withDataType("String")
+                .withStringValue(TEST_TYPE.toUpperCase()));
+        Message upperCase = new Message().withMessageId("id").withBody("body").withMessageAttributes(messageAttributes);
+
+        for (int i = 0; i < 10; i++) {
+            fixture.log(TEST_QUEUE_URL, message, new RuntimeException());
+            fixture.log(TEST_QUEUE_URL, upperCase, new RuntimeException());
+        }
+
+        verify(log, times(1)).error(anyString(), any(Throwable.class));
+        verify(log, times(4)).error(anyString());
+    }
+
+    @Test
+    public void testDistinctKeysAreCapped() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, Long.MAX_VALUE);
+
+        for (int i = 0; i < ProcessingErrorLogger.MAX_DISTINCT_KEYS + 50; i++) {
+            Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+            messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE, new MessageAttributeValue().withDataType("String")
+                    .withStringValue(TEST_TYPE + i));
+            fixture.log(TEST_QUEUE_URL, new Message().withMessageId("id").withBody("body")
+                    .withMessageAttributes(messageAttributes), new RuntimeException());
+        }
+
+        // One traced event per distinct key, the overflow shares a single key.
+        verify(log, times(ProcessingErrorLogger.MAX_DISTINCT_KEYS + 1)).error(anyString(), any(Throwable.class));
+        verify(log, times(4)).error(anyString());
+    }
+
+    @Test
+    public void testSummary() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, 0);
+
+        fixture.log(TEST_QUEUE_URL, message, new RuntimeException());
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(log).warn(captor.capture());
+        assertTrue(captor.getValue().contains("testtype/java.lang.RuntimeException=1"));
+    }
+
+    @Test
+    public void testFullDump() {
+        ProcessingErrorLogger fixture = new ProcessingErrorLogger(log, MAX_BODY_LENGTH, SLOW_RATE, Long.MAX_VALUE);
+        fixture.setFullDump(true);
+
+        for (int i = 0; i < 10; i++) {
+            fixture.log(TEST_QUEUE_URL, message, new RuntimeException());
+        }
+
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(log, times(10)).error(captor.capture(), any(Throwable.class));
+        assertTrue(captor.getValue().contains("secret"));
+    }
+}
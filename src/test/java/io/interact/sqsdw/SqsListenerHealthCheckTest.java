@@ -0,0 +1,169 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.interact.sqsdw.sqs.QueueAttributes;
+import io.interact.sqsdw.sqs.QueueAttributesCache;
+import io.interact.sqsdw.sqs.SqsListener;
+import io.interact.sqsdw.sqs.SqsListenerHealthCheck;
+import io.interact.sqsdw.sqs.SqsListenerHealthThresholds;
+import io.interact.sqsdw.sqs.SqsListenerStatus;
+import io.interact.sqsdw.sqs.StatusReportingSqsListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.codahale.metrics.health.HealthCheck.Result;
+
+/**
+ * Tests {@link SqsListenerHealthCheck} thresholds and the
+ * {@link QueueAttributesCache}.
+ */
+public class SqsListenerHealthCheckTest {
+
+    private static final String TEST_QUEUE_URL = "test-queue-url";
+
+    @Mock
+    private AmazonSQS sqs;
+
+    @Mock
+    private StatusReportingSqsListener listener;
+
+    private SqsListenerHealthThresholds thresholds;
+
+    private SqsListenerHealthCheck fixture;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(listener.getQueueUrl()).thenReturn(TEST_QUEUE_URL);
+        when(listener.isHealthy()).thenReturn(true);
+
+        thresholds = new SqsListenerHealthThresholds();
+        thresholds.setMaxQueueDepth(1000);
+        thresholds.setMinProcessingToArrivalRatio(0.9);
+        fixture = new SqsListenerHealthCheck(listener, thresholds);
+    }
+
+    @Test
+    public void testHealthy() {
+        when(listener.getStatus(true)).thenReturn(new SqsListenerStatus(TEST_QUEUE_URL, true, 10, 1, 0, 10, 10, 2));
+
+        assertTrue(fixture.execute().isHealthy());
+    }
+
+    @Test
+    public void testUnhealthy() {
+        when(listener.isHealthy()).thenReturn(false);
+
+        assertFalse(fixture.execute().isHealthy());
+    }
+
+    @Test
+    public void testListenerWithoutStatus() {
+        SqsListener plain = mock(SqsListener.class);
+        when(plain.getQueueUrl()).thenReturn(TEST_QUEUE_URL);
+        when(plain.isHealthy()).thenReturn(true);
+
+        Result result = new SqsListenerHealthCheck(plain).execute();
+        assertTrue(result.isHealthy());
+        assertNull(result.getMessage());
+
+        when(plain.isHealthy()).thenReturn(false);
+        assertFalse(new SqsListenerHealthCheck(plain).execute().isHealthy());
+    }
+
+    @Test
+    public void testDegradedByQueueDepth() {
+        when(listener.getStatus(true)).thenReturn(new SqsListenerStatus(TEST_QUEUE_URL, true, 5000, 1, 0, 10, 10, 2));
+
+        Result result = fixture.execute();
+        assertTrue(result.isHealthy());
+        assertTrue(result.getMessage().startsWith(SqsListenerHealthCheck.DEGRADED));
+        assertTrue(result.getMessage().contains("queue depth"));
+    }
+
+    @Test
+    public void testDegradedByArrivalRate() {
+        when(listener.getStatus(true)).thenReturn(new SqsListenerStatus(TEST_QUEUE_URL, true, 10, 1, 0, 5, 10, 2));
+
+        assertEquals(1, thresholds.findViolations(listener.getStatus(true)).size());
+        assertTrue(fixture.execute().getMessage().startsWith(SqsListenerHealthCheck.DEGRADED));
+    }
+
+    @Test
+    public void testSkipsQueueAttributesWithoutThresholds() {
+        thresholds = new SqsListenerHealthThresholds();
+        thresholds.setMaxSecondsSinceLastReceive(60);
+        when(listener.getStatus(false)).thenReturn(
+                new SqsListenerStatus(TEST_QUEUE_URL, true, SqsListenerStatus.UNKNOWN, 1, 0, 10, 0, 2));
+
+        assertTrue(new SqsListenerHealthCheck(listener, thresholds).execute().isHealthy());
+        verify(listener, never()).getStatus(true);
+    }
+
+    @Test
+    public void testUnknownValues() {
+        thresholds.setMaxSecondsSinceLastReceive(60);
+        SqsListenerStatus status = new SqsListenerStatus(TEST_QUEUE_URL, true, SqsListenerStatus.UNKNOWN, 0,
+                SqsListenerStatus.UNKNOWN, 0, 0, 0);
+
+        List<String> violations = thresholds.findViolations(status);
+        assertEquals(1, violations.size());
+        assertTrue(violations.get(0).contains("no successful receive"));
+    }
+
+    @Test
+    public void testQueueAttributesAreCached() {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("ApproximateNumberOfMessages", "42");
+        attributes.put("ApproximateNumberOfMessagesNotVisible", "3");
+        when(sqs.getQueueAttributes(any(GetQueueAttributesRequest.class))).thenReturn(
+                new GetQueueAttributesResult().withAttributes(attributes));
+
+        QueueAttributesCache cache = new QueueAttributesCache(sqs, QueueAttributesCache.DEFAULT_TTL);
+        QueueAttributes first = cache.get(TEST_QUEUE_URL);
+        QueueAttributes second = cache.get(TEST_QUEUE_URL);
+
+        assertSame(first, second);
+        assertEquals(42, first.getVisibleMessages());
+        assertEquals(45, first.getTotalMessages());
+        verify(sqs, times(1)).getQueueAttributes(any(GetQueueAttributesRequest.class));
+    }
+
+    @Test
+    public void testQueueAttributeFailuresAreCached() {
+        when(sqs.getQueueAttributes(any(GetQueueAttributesRequest.class))).thenThrow(new RuntimeException("unavailable"));
+
+        QueueAttributesCache cache = new QueueAttributesCache(sqs, QueueAttributesCache.DEFAULT_TTL);
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.get(TEST_QUEUE_URL);
+                fail("Expected the cached failure");
+            } catch (RuntimeException e) {
+                assertEquals("unavailable", e.getMessage());
+            }
+        }
+
+        verify(sqs, times(1)).getQueueAttributes(any(GetQueueAttributesRequest.class));
+    }
+}
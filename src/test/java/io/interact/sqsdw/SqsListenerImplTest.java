@@ -1,22 +1,32 @@
 package io.interact.sqsdw;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import io.interact.sqsdw.sqs.MessageHandler;
+import io.interact.sqsdw.sqs.MessageLimits;
 import io.interact.sqsdw.sqs.SqsListenerImpl;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +49,8 @@ public class SqsListenerImplTest {
 
     private static final String TEST_QUEUE_URL = "test-queue-url";
 
+    private static final String TEST_TYPE = "TestType";
+
     @Mock
     private AmazonSQS sqs;
 
@@ -155,4 +167,133 @@ public class SqsListenerImplTest {
 
         verify(sqs, atLeastOnce()).deleteMessage(any(DeleteMessageRequest.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDefersMessagesIfHandlerIsThrottled() throws Exception {
+        LOG.debug("testDefersMessagesIfHandlerIsThrottled()...");
+
+        Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+        messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE, new MessageAttributeValue().withDataType("String")
+                .withStringValue(TEST_TYPE));
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message().withMessageAttributes(messageAttributes));
+        messages.add(new Message().withMessageAttributes(messageAttributes));
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(messages);
+
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(result);
+
+        Set<MessageHandler> handlers = new HashSet<>();
+        handlers.add(new MessageHandler(TEST_TYPE, new MessageLimits(0.001, 1)) {
+
+            @Override
+            public void handle(Message message) {
+            }
+        });
+        fixture = new SqsListenerImpl(sqs, TEST_QUEUE_URL, handlers);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        fixture.stop();
+
+        verify(sqs, times(1)).deleteMessage(any(DeleteMessageRequest.class));
+        verify(sqs, atLeastOnce()).changeMessageVisibility(any(ChangeMessageVisibilityRequest.class));
+    }
+
+    @Test
+    public void testReceivesNoMoreMessagesThanIdleWorkers() throws Exception {
+        LOG.debug("testReceivesNoMoreMessagesThanIdleWorkers()...");
+
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new TypedMessagesAnswer());
+        BlockingHandler blocking = new BlockingHandler(null);
+        Set<MessageHandler> handlers = new HashSet<>();
+        handlers.add(blocking);
+        fixture = new SqsListenerImpl(sqs, TEST_QUEUE_URL, handlers, 2);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+
+        ArgumentCaptor<ReceiveMessageRequest> captor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(sqs, times(1)).receiveMessage(captor.capture());
+        assertEquals(2, captor.getValue().getMaxNumberOfMessages().intValue());
+
+        blocking.latch.countDown();
+        fixture.stop();
+
+        verify(sqs, never()).changeMessageVisibility(any(ChangeMessageVisibilityRequest.class));
+    }
+
+    @Test
+    public void testDefersMessagesIfBulkheadIsFull() throws Exception {
+        LOG.debug("testDefersMessagesIfBulkheadIsFull()...");
+
+        when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(new TypedMessagesAnswer());
+        BlockingHandler blocking = new BlockingHandler(new MessageLimits(0, 1));
+        Set<MessageHandler> handlers = new HashSet<>();
+        handlers.add(blocking);
+        fixture = new SqsListenerImpl(sqs, TEST_QUEUE_URL, handlers, 2);
+
+        fixture.start();
+        Thread.sleep(WAIT);
+        blocking.latch.countDown();
+        fixture.stop();
+
+        verify(sqs, atLeastOnce()).changeMessageVisibility(any(ChangeMessageVisibilityRequest.class));
+        assertEquals(1, blocking.getMaxConcurrent());
+    }
+
+    /**
+     * Returns as many messages of the test type as were requested.
+     */
+    private static class TypedMessagesAnswer implements Answer<ReceiveMessageResult> {
+
+        @Override
+        public ReceiveMessageResult answer(InvocationOnMock invocation) throws Throwable {
+            ReceiveMessageRequest request = (ReceiveMessageRequest) invocation.getArguments()[0];
+            int count = request.getMaxNumberOfMessages() != null ? request.getMaxNumberOfMessages() : 1;
+            Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+            messageAttributes.put(MessageHandler.ATTR_MESSAGE_TYPE, new MessageAttributeValue().withDataType("String")
+                    .withStringValue(TEST_TYPE));
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                messages.add(new Message().withMessageAttributes(messageAttributes));
+            }
+            return new ReceiveMessageResult().withMessages(messages);
+        }
+    }
+
+    /**
+     * Handles messages of the test type until the latch is released.
+     */
+    private static class BlockingHandler extends MessageHandler {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private int concurrent;
+        private int maxConcurrent;
+
+        BlockingHandler(MessageLimits limits) {
+            super(TEST_TYPE, limits);
+        }
+
+        @Override
+        public void handle(Message message) {
+            synchronized (this) {
+                concurrent++;
+                maxConcurrent = Math.max(maxConcurrent, concurrent);
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    concurrent--;
+                }
+            }
+        }
+
+        synchronized int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+    }
+}
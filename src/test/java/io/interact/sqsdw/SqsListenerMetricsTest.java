@@ -0,0 +1,89 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.interact.sqsdw.sqs.QueueAttributes;
+import io.interact.sqsdw.sqs.SqsListenerMetrics;
+import io.interact.sqsdw.sqs.SqsListenerStatus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Tests the arrival rate arithmetic, the oldest message age and the unknown
+ * values of the {@link SqsListenerMetrics}.
+ */
+public class SqsListenerMetricsTest {
+
+    private static final String TEST_QUEUE_URL = "test-queue-url";
+
+    private static final String LOW_QUEUE_URL = "low-queue-url";
+
+    private static final double DELTA = 0.0001;
+
+    private SqsListenerMetrics fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new SqsListenerMetrics();
+    }
+
+    @Test
+    public void testArrivalRate() {
+        assertEquals(0, fixture.updateArrivalRate(new QueueAttributes(100, 0, 0)), DELTA);
+
+        for (int i = 0; i < 20; i++) {
+            fixture.onProcessed();
+        }
+        // 30 more messages on the queue and 20 processed in 10 seconds.
+        assertEquals(5, fixture.updateArrivalRate(new QueueAttributes(120, 10, 10000)), DELTA);
+
+        // Cached attributes don't change the rate.
+        fixture.onProcessed();
+        assertEquals(5, fixture.updateArrivalRate(new QueueAttributes(120, 10, 10000)), DELTA);
+    }
+
+    @Test
+    public void testArrivalRateIsNotNegative() {
+        fixture.updateArrivalRate(new QueueAttributes(100, 0, 0));
+
+        assertEquals(0, fixture.updateArrivalRate(new QueueAttributes(50, 0, 10000)), DELTA);
+    }
+
+    @Test
+    public void testOldestMessageAgePerQueue() {
+        long sent = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+        Message message = new Message().withAttributes(Collections.singletonMap(SqsListenerMetrics.ATTR_SENT_TIMESTAMP,
+                Long.toString(sent)));
+
+        fixture.onReceive(LOW_QUEUE_URL, Collections.singletonList(message));
+        fixture.onReceive(TEST_QUEUE_URL, Collections.<Message> emptyList());
+
+        assertTrue(fixture.toStatus(TEST_QUEUE_URL, true, null).getOldestMessageAgeSeconds() >= 60);
+
+        fixture.onReceive(LOW_QUEUE_URL, Collections.<Message> emptyList());
+
+        assertEquals(0, fixture.toStatus(TEST_QUEUE_URL, true, null).getOldestMessageAgeSeconds());
+    }
+
+    @Test
+    public void testUnknownValues() {
+        SqsListenerStatus status = fixture.toStatus(TEST_QUEUE_URL, true, null);
+
+        assertEquals(SqsListenerStatus.UNKNOWN, status.getQueueDepth());
+        assertEquals(SqsListenerStatus.UNKNOWN, status.getSecondsSinceLastReceive());
+        assertEquals(0, status.getArrivalRate(), DELTA);
+
+        fixture.onReceive(TEST_QUEUE_URL, Collections.<Message> emptyList());
+        status = fixture.toStatus(TEST_QUEUE_URL, true, new QueueAttributes(42, 3, System.currentTimeMillis()));
+
+        assertEquals(42, status.getQueueDepth());
+        assertEquals(0, status.getSecondsSinceLastReceive());
+    }
+}
@@ -0,0 +1,88 @@
+package io.interact.sqsdw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.interact.sqsdw.sqs.SqsListenerHealthThresholds;
+import io.interact.sqsdw.sqs.SqsListenerStatus;
+import io.interact.sqsdw.sqs.SqsListenerStatusServlet;
+import io.interact.sqsdw.sqs.StatusReportingSqsListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests that the {@link SqsListenerStatusServlet} reports the same state as
+ * the health check.
+ */
+public class SqsListenerStatusServletTest {
+
+    private static final String TEST_QUEUE_URL = "test-queue-url";
+
+    @Mock
+    private StatusReportingSqsListener healthy;
+
+    @Mock
+    private StatusReportingSqsListener degraded;
+
+    @Mock
+    private StatusReportingSqsListener unhealthy;
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    private StringWriter output;
+
+    private SqsListenerStatusServlet fixture;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(healthy.getStatus()).thenReturn(new SqsListenerStatus(TEST_QUEUE_URL, true, 10, 1, 0, 10, 10, 2));
+        when(degraded.getStatus()).thenReturn(new SqsListenerStatus(TEST_QUEUE_URL, true, 5000, 1, 0, 10, 10, 2));
+        when(unhealthy.getStatus()).thenReturn(
+                new SqsListenerStatus(TEST_QUEUE_URL, false, SqsListenerStatus.UNKNOWN, 0, SqsListenerStatus.UNKNOWN, 0, 0, 0));
+
+        output = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(output));
+
+        SqsListenerHealthThresholds thresholds = new SqsListenerHealthThresholds();
+        thresholds.setMaxQueueDepth(1000);
+        fixture = new SqsListenerStatusServlet(Arrays.asList(healthy, degraded, unhealthy), thresholds);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        when(request.getMethod()).thenReturn("GET");
+
+        fixture.service(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        List<Map<String, Object>> report = new ObjectMapper().readValue(output.toString(),
+                new TypeReference<List<Map<String, Object>>>() {
+                });
+        assertEquals(3, report.size());
+        assertEquals("HEALTHY", report.get(0).get("state"));
+        assertEquals("DEGRADED", report.get(1).get("state"));
+        assertTrue(report.get(1).get("violations").toString().contains("queue depth"));
+        assertEquals("UNHEALTHY", report.get(2).get("state"));
+    }
+}